@@ -0,0 +1,99 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Check the CSV result file of a JMH run with the GC profiler. The build
+ *  fails if the normalized allocation rate (gc.alloc.rate.norm, bytes per
+ *  operation) of the named benchmark exceeds the limit for any parameter
+ *  set. It also fails if the file holds no such result, so that a renamed
+ *  benchmark or a missing profiler does not pass unnoticed.
+ *
+ *  Usage: AllocationCheck <result.csv> <benchmark> <limit B/op>
+ *  where benchmark is the end of the name, e.g. RealBufferBenchmark.add
+ */
+public class AllocationCheck {
+	private static final String METRIC = "gc.alloc.rate.norm";
+
+	public static void main(String[] args) throws IOException {
+		if( args.length<3 ) {
+			System.err.println("Usage: AllocationCheck <result.csv> <benchmark> <limit B/op>");
+			System.exit(2);
+		}
+		String benchmark = args[1];
+		double limit = Double.parseDouble(args[2]);
+		int checked = 0;
+		int failed = 0;
+		try( BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]),StandardCharsets.UTF_8) ) {
+			List<String> header = split(reader.readLine());
+			int scoreColumn = header.indexOf("Score");
+			if( scoreColumn<0 ) {
+				System.err.printf("AllocationCheck: %s is not a JMH CSV result file%n",args[0]);
+				System.exit(2);
+			}
+			String line = null;
+			while( (line=reader.readLine())!=null ) {
+				List<String> fields = split(line);
+				if( fields.size()<=scoreColumn ) continue;
+				// Secondary results are named <benchmark>:<metric>, formerly with a dot before the metric
+				String name = fields.get(0);
+				int colon = name.indexOf(':');
+				if( colon<0 || !name.substring(0,colon).endsWith(benchmark) || !name.endsWith(METRIC) ) continue;
+				double score = Double.parseDouble(fields.get(scoreColumn).replace(',','.'));
+				// The score is followed by its error and unit, then the parameters
+				StringBuilder params = new StringBuilder();
+				for(int i=scoreColumn+3;i<fields.size() && i<header.size();i++) {
+					if( params.length()>0 ) params.append(",");
+					params.append(header.get(i).replace("Param: ","")).append("=").append(fields.get(i));
+				}
+				checked++;
+				if( score>limit ) {
+					failed++;
+					System.out.printf("FAIL %s (%s): %.3f B/op exceeds %.3f%n",name,params,score,limit);
+				}
+				else {
+					System.out.printf("OK   %s (%s): %.3f B/op%n",name,params,score);
+				}
+			}
+		}
+		if( checked==0 ) {
+			System.out.printf("FAIL no %s result for %s in %s%n",METRIC,benchmark,args[0]);
+			System.exit(1);
+		}
+		if( failed>0 ) System.exit(1);
+	}
+
+	// Split a CSV line into fields, removing the quotes around any field.
+	private static List<String> split(String line) {
+		List<String> fields = new ArrayList<>();
+		if( line==null ) return fields;
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for(int i=0;i<line.length();i++) {
+			char c = line.charAt(i);
+			if( c=='"' ) {
+				if( quoted && i+1<line.length() && line.charAt(i+1)=='"' ) {
+					field.append(c);
+					i++;
+				}
+				else quoted = !quoted;
+			}
+			else if( c==',' && !quoted ) {
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else field.append(c);
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
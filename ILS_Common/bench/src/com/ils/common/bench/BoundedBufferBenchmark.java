@@ -0,0 +1,103 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ils.common.BoundedBuffer;
+import com.ils.common.ConcurrentBoundedBuffer;
+
+/**
+ *  Hand-off through a shared BoundedBuffer or ConcurrentBoundedBuffer.
+ *  Each operation puts an item and then takes one. Because every thread puts before it takes and the
+ *  capacity exceeds the thread count, no thread can remain blocked when
+ *  the measurement ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoundedBufferBenchmark {
+	private static final Object ITEM = new Object();
+	private static final int BATCH = 16;
+	@Param({"1024"})
+	public int capacity;
+	@Param({"monitor","concurrent"})
+	public String impl;
+	private BoundedBuffer<Object> buffer = null;
+	private ConcurrentBoundedBuffer<Object> concurrent = null;
+	private Object[] batch;
+	private Object[] sink;
+
+	@Setup
+	public void setup() {
+		if( impl.equals("concurrent") ) concurrent = new ConcurrentBoundedBuffer<>(capacity);
+		else buffer = new BoundedBuffer<>(capacity);
+		batch = new Object[BATCH];
+		for(int i=0;i<BATCH;i++) batch[i] = ITEM;
+		sink = new Object[BATCH];
+	}
+
+	@Benchmark
+	public Object putGet() throws InterruptedException {
+		return transfer();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object putGetContended() throws InterruptedException {
+		return transfer();
+	}
+
+	/**
+	 * getAll() may take another thread's items, so the batch variant
+	 * is single-threaded.
+	 */
+	@Benchmark
+	public Object[] putAllGetAll() throws InterruptedException {
+		if( concurrent!=null ) {
+			concurrent.putAll(batch);
+			return concurrent.getAll();
+		}
+		buffer.putAll(batch);
+		return buffer.getAll();
+	}
+
+	/**
+	 * As above, but draining into re-used storage.
+	 */
+	@Benchmark
+	public int putAllDrainTo() throws InterruptedException {
+		if( concurrent!=null ) {
+			concurrent.putAll(batch);
+			return concurrent.drainTo(sink);
+		}
+		buffer.putAll(batch);
+		return buffer.drainTo(sink);
+	}
+
+	private Object transfer() throws InterruptedException {
+		if( concurrent!=null ) {
+			concurrent.put(ITEM);
+			return concurrent.get();
+		}
+		buffer.put(ITEM);
+		return buffer.get();
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ils.common.collector.CircularRealBuffer;
+import com.ils.common.collector.ConcurrentRealBuffer;
+
+/**
+ *  One subscription thread writes a tag buffer while several evaluation
+ *  threads poll it. Compares the synchronized CircularRealBuffer with
+ *  the seqlock-style ConcurrentRealBuffer.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentRealBufferBenchmark {
+	@Param({"100"})
+	public int capacity;
+	private CircularRealBuffer synchronizedBuffer;
+	private ConcurrentRealBuffer seqlockBuffer;
+	private double value = 0.;
+
+	@Setup
+	public void setup() {
+		synchronizedBuffer = new CircularRealBuffer(capacity);
+		seqlockBuffer = new ConcurrentRealBuffer(capacity);
+		for(int i=0;i<capacity;i++) {
+			synchronizedBuffer.add(i);
+			seqlockBuffer.add(i);
+		}
+	}
+
+	@Benchmark
+	@Group("synchronizedBuffer")
+	@GroupThreads(1)
+	public void synchronizedWrite() {
+		value += 1.;
+		synchronizedBuffer.add(value);
+	}
+
+	@Benchmark
+	@Group("synchronizedBuffer")
+	@GroupThreads(4)
+	public double synchronizedRead() {
+		return synchronizedBuffer.getLastValue();
+	}
+
+	@Benchmark
+	@Group("seqlockBuffer")
+	@GroupThreads(1)
+	public void seqlockWrite() {
+		value += 1.;
+		seqlockBuffer.add(value);
+	}
+
+	@Benchmark
+	@Group("seqlockBuffer")
+	@GroupThreads(4)
+	public double seqlockRead() {
+		return seqlockBuffer.getLastValue();
+	}
+
+	@Benchmark
+	@Group("seqlockSnapshot")
+	@GroupThreads(1)
+	public void snapshotWrite() {
+		value += 1.;
+		seqlockBuffer.add(value);
+	}
+
+	@Benchmark
+	@Group("seqlockSnapshot")
+	@GroupThreads(4)
+	public double[] snapshotRead() {
+		return seqlockBuffer.getLastNValues(10);
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ils.common.FixedSizeQueue;
+
+/**
+ *  A full FixedSizeQueue, where every addition evicts the eldest entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixedSizeQueueBenchmark {
+	private static final Integer ITEM = Integer.valueOf(42);
+	@Param({"10","1000"})
+	public int capacity;
+	private FixedSizeQueue<Integer> queue;
+	private List<Integer> batch;
+
+	@Setup
+	public void setup() {
+		queue = new FixedSizeQueue<>(capacity);
+		for(int i=0;i<capacity;i++) {
+			queue.add(Integer.valueOf(i));
+		}
+		batch = new ArrayList<>();
+		for(int i=0;i<100;i++) {
+			batch.add(Integer.valueOf(i));
+		}
+	}
+
+	@Benchmark
+	public boolean add() {
+		return queue.add(ITEM);
+	}
+
+	@Benchmark
+	public boolean addAll() {
+		return queue.addAll(batch);
+	}
+
+	@Benchmark
+	public long iterate() {
+		long sum = 0;
+		for(Integer val:queue) {
+			sum += val.intValue();
+		}
+		return sum;
+	}
+}
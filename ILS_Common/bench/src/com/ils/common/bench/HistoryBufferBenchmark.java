@@ -0,0 +1,117 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.bench;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ils.common.collector.CircularHistoryBuffer;
+import com.ils.common.collector.ColumnarHistoryBuffer;
+import com.ils.common.collector.DataPoint;
+import com.ils.common.collector.HistoryBuffer;
+import com.ils.common.collector.Observation;
+import com.ils.common.collector.ObservationPool;
+
+/**
+ *  Observation history buffers, filled to capacity with one observation per
+ *  minute. The queries are those made by the rule engine each cycle.
+ *  The buffers share an observation pool. Each cycle's observation is
+ *  added either as a clone of a collector's prototype or as a pooled copy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBufferBenchmark {
+	private static final long INTERVAL = 60000;   // ~ msecs
+	@Param({"1000","10000"})
+	public int capacity;
+	@Param({"20","200"})
+	public int points;
+	@Param({"circular","columnar"})
+	public String layout;
+	private HistoryBuffer buffer;
+	private ObservationPool pool;
+	private Observation prototype;
+	private long time = 0;
+
+	@Setup
+	public void setup() {
+		buffer = (layout.equals("columnar")?new ColumnarHistoryBuffer(capacity,points):new CircularHistoryBuffer(capacity));
+		pool = new ObservationPool();
+		buffer.setObservationPool(pool);
+		prototype = observation(time);
+		for(int i=0;i<capacity;i++) {
+			time += INTERVAL;
+			buffer.add(observation(time));
+		}
+	}
+
+	@Benchmark
+	public void add() {
+		time += INTERVAL;
+		buffer.add(observation(time));
+	}
+
+	@Benchmark
+	public void addClone() {
+		time += INTERVAL;
+		prototype.timestamp.setTime(time);
+		buffer.add(prototype.clone());
+	}
+
+	@Benchmark
+	public void addPooled() {
+		time += INTERVAL;
+		prototype.timestamp.setTime(time);
+		Observation obs = pool.copyOf(prototype);
+		buffer.add(obs);
+		pool.release(obs);
+	}
+
+	@Benchmark
+	public Object getPastValue() {
+		return buffer.getPastValue(points/2, 30*INTERVAL);
+	}
+
+	@Benchmark
+	public Object getPriorValue() {
+		return buffer.getPriorValue(points/2);
+	}
+
+	@Benchmark
+	public int getObservationCount() {
+		return buffer.getObservationCount(capacity*INTERVAL/2);
+	}
+
+	@Benchmark
+	public Observation[] getHistoryWindow() {
+		return buffer.getHistory(10*INTERVAL);
+	}
+
+	private Observation observation(long ts) {
+		DataPoint[] data = new DataPoint[points];
+		for(int i=0;i<points;i++) {
+			DataPoint point = new DataPoint(i,"[default]Plant/Tag"+i);
+			point.timestamp = new Date(ts);
+			point.value = Double.valueOf(ts%1000+i);
+			data[i] = point;
+		}
+		return new Observation(new Date(ts),data);
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ils.common.FilterPair;
+import com.ils.common.KeyedCircularBuffer;
+
+/**
+ *  A full KeyedCircularBuffer of log-style entries, each tagged with a
+ *  logger, level and thread. A filter on logger and level selects roughly
+ *  one entry in thirty-two.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyedCircularBufferBenchmark {
+	private static final String[] LOGGERS = {"collector","watchdog","gateway","designer","client","script","alarm","sfc","report","tag"};
+	private static final String[] LEVELS = {"DEBUG","INFO","WARN","ERROR"};
+	private static final int PATTERNS = 64;
+	private static final int POLL_BATCH = 10;
+	@Param({"1000","10000"})
+	public int capacity;
+	private KeyedCircularBuffer buffer;
+	private List<Map<String,String>> attributes;
+	private List<FilterPair> filters;
+	private long cursor;
+	private int counter = 0;
+
+	@Setup
+	public void setup() {
+		buffer = new KeyedCircularBuffer(capacity);
+		attributes = new ArrayList<>();
+		for(int i=0;i<PATTERNS;i++) {
+			Map<String,String> map = new HashMap<>();
+			map.put("logger", LOGGERS[i%LOGGERS.length]);
+			map.put("level", LEVELS[(i/LOGGERS.length)%LEVELS.length]);
+			map.put("thread", "thread-"+(i%7));
+			attributes.add(map);
+		}
+		filters = new ArrayList<>();
+		filters.add(new FilterPair("logger","watchdog"));
+		filters.add(new FilterPair("level","WARN"));
+		for(int i=0;i<capacity;i++) {
+			add();
+		}
+		cursor = buffer.getSequence();
+	}
+
+	@Benchmark
+	public void add() {
+		counter++;
+		buffer.add(attributes.get(counter%PATTERNS), "message "+counter);
+	}
+
+	@Benchmark
+	public Object getRecentValues() {
+		return buffer.getRecentValues(100);
+	}
+
+	@Benchmark
+	public Object getRecentValuesFiltered() {
+		return buffer.getRecentValuesFiltered(filters, 100);
+	}
+
+	/**
+	 * A client polls for new entries with a cursor after every few additions.
+	 */
+	@Benchmark
+	public Object readSince() {
+		for(int i=0;i<POLL_BATCH;i++) {
+			add();
+		}
+		KeyedCircularBuffer.IncrementalRead read = buffer.readSince(cursor, filters, 0);
+		cursor = read.getCursor();
+		return read;
+	}
+}
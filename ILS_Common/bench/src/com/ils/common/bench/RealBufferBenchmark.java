@@ -0,0 +1,88 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ils.common.collector.CircularRealBuffer;
+
+/**
+ *  Single-threaded costs of the CircularRealBuffer. Run add() with the GC
+ *  profiler (-prof gc) to confirm that the add path does not allocate:
+ *  gc.alloc.rate.norm should be 0 B/op. The check-alloc target of the
+ *  benchmark build enforces this.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RealBufferBenchmark {
+	@Param({"100","10000"})
+	public int capacity;
+	private CircularRealBuffer buffer;
+	private double value = 0.;
+
+	@Setup
+	public void setup() {
+		buffer = new CircularRealBuffer(capacity);
+		for(int i=0;i<capacity;i++) {
+			buffer.add(next());
+		}
+	}
+
+	@Benchmark
+	public void add() {
+		buffer.add(next());
+	}
+
+	@Benchmark
+	public double getLastValue() {
+		return buffer.getLastValue();
+	}
+
+	@Benchmark
+	public double[] getValues() {
+		return buffer.getValues();
+	}
+
+	@Benchmark
+	public double getMean() {
+		return buffer.getMean();
+	}
+
+	@Benchmark
+	public double getVariance() {
+		return buffer.getVariance();
+	}
+
+	@Benchmark
+	public double getMaximum() {
+		return buffer.getMaximum();
+	}
+
+	@Benchmark
+	public double getSlope() {
+		return buffer.getSlope();
+	}
+
+	// A noisy ramp
+	private double next() {
+		value += 1.;
+		return value + ((long)value*7919L)%13;
+	}
+}
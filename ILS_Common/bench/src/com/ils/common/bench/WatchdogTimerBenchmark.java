@@ -0,0 +1,98 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ils.common.watchdog.HeapWatchdogQueue;
+import com.ils.common.watchdog.ShardedWatchdogTimer;
+import com.ils.common.watchdog.TimingWheelWatchdogQueue;
+import com.ils.common.watchdog.Watchdog;
+import com.ils.common.watchdog.WatchdogObserver;
+import com.ils.common.watchdog.WatchdogQueue;
+import com.ils.common.watchdog.WatchdogTimer;
+
+/**
+ *  Petting watchdogs on a busy timer. None of the dogs expire during the
+ *  measurement, so this isolates the cost of re-scheduling. Compare the
+ *  queues at a range of kennel sizes. With more than one shard, the dogs
+ *  are held by a ShardedWatchdogTimer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WatchdogTimerBenchmark {
+	private static final long DELAY = 600000;      // Ten minutes ~ msecs
+	@Param({"1000","100000"})
+	public int dogCount;
+	@Param({"heap","wheel"})
+	public String queue;
+	@Param({"1","8"})
+	public int shards;
+	private WatchdogTimer timer = null;
+	private ShardedWatchdogTimer shardedTimer = null;
+	private Watchdog[] dogs;
+
+	@Setup
+	public void setup() {
+		Supplier<WatchdogQueue> factory = (queue.equals("wheel")?TimingWheelWatchdogQueue::new:HeapWatchdogQueue::new);
+		if( shards>1 ) shardedTimer = new ShardedWatchdogTimer("Benchmark",shards,factory);
+		else timer = new WatchdogTimer("Benchmark",factory.get());
+		WatchdogObserver observer = new WatchdogObserver() {
+			@Override
+			public void evaluate() {}
+		};
+		dogs = new Watchdog[dogCount];
+		for(int i=0;i<dogCount;i++) {
+			dogs[i] = new Watchdog("dog"+i,observer);
+			dogs[i].setDelay(DELAY+i);
+			if( timer!=null ) timer.addWatchdog(dogs[i]);
+			else shardedTimer.addWatchdog(dogs[i]);
+		}
+	}
+
+	@TearDown
+	public void teardown() {
+		if( timer!=null ) timer.stop();
+		else shardedTimer.stop();
+	}
+
+	@Benchmark
+	public void pet() {
+		petRandomDog();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void petContended() {
+		petRandomDog();
+	}
+
+	private void petRandomDog() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Watchdog dog = dogs[random.nextInt(dogs.length)];
+		dog.setDelay(DELAY+random.nextInt(1000));
+		if( timer!=null ) timer.updateWatchdog(dog);
+		else shardedTimer.updateWatchdog(dog);
+	}
+}
@@ -0,0 +1,12 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ *   Stand-in for the Inductive Automation class of the same name.
+ *   It is used only to build the benchmarks outside of Ignition.
+ */
+package com.inductiveautomation.ignition.common.util;
+
+public class LogUtil {
+	public static LoggerEx getLogger(String name) {
+		return new LoggerEx(name);
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ *   Stand-in for the Inductive Automation class of the same name.
+ *   It is used only to build the benchmarks outside of Ignition.
+ */
+package com.inductiveautomation.ignition.common.util;
+
+/**
+ *  A minimal logger with the subset of the LoggerEx interface used by the
+ *  classes under benchmark. Debug and trace are disabled, as they would be
+ *  in production. Messages at info and above are written to stderr.
+ */
+public class LoggerEx {
+	private final String name;
+
+	public LoggerEx(String name) {
+		this.name = name;
+	}
+
+	public boolean isTraceEnabled() { return false; }
+	public boolean isDebugEnabled() { return false; }
+	public boolean isInfoEnabled()  { return true; }
+
+	public void trace(String msg) {}
+	public void tracef(String format,Object... args) {}
+	public void debug(String msg) {}
+	public void debug(String msg,Throwable t) {}
+	public void debugf(String format,Object... args) {}
+	public void info(String msg) { write("INFO",msg,null); }
+	public void infof(String format,Object... args) { write("INFO",format(format,args),null); }
+	public void warn(String msg) { write("WARN",msg,null); }
+	public void warn(String msg,Throwable t) { write("WARN",msg,t); }
+	public void warnf(String format,Object... args) { write("WARN",format(format,args),null); }
+	public void error(String msg) { write("ERROR",msg,null); }
+	public void error(String msg,Throwable t) { write("ERROR",msg,t); }
+	public void errorf(String format,Object... args) { write("ERROR",format(format,args),null); }
+
+	private String format(String format,Object... args) {
+		try {
+			return String.format(format,args);
+		}
+		catch(RuntimeException ex) {
+			return format;     // Callers sometimes pre-format the message
+		}
+	}
+
+	private void write(String level,String msg,Throwable t) {
+		System.err.println(level+" ["+name+"] "+msg);
+		if( t!=null ) t.printStackTrace();
+	}
+}
@@ -4,13 +4,19 @@
  */
  package com.ils.common;
 
+import java.util.Collection;
+
 /**
  * The BoundedBuffer class is designed for use as an object-passing
  * mechanism between a collection of producer and consumer threads.
  *
+ * The drainTo() methods remove objects in bulk into storage supplied by
+ * the caller, without allocation, and wake waiting producers once per
+ * batch.
+ *
  * @author adapted from Tom Cargill from "Advanced Java Programming Topics"
  */
-public class BoundedBuffer
+public class BoundedBuffer<E>
 {
     private Object[]	queue;
     private int		    head = 0;       // Next spot to save
@@ -32,16 +38,18 @@ public class BoundedBuffer
      * Retrieve an object from the queue. If there are none, this call
      * blocks until an object is entered by another thread.
      */
-    public synchronized Object get() throws InterruptedException    {
+    @SuppressWarnings("unchecked")
+    public synchronized E get() throws InterruptedException    {
         waitWhileEmpty();
 
         Object obj = queue[tail];
         //System.out.println("BoundedBuffer"+this+": get " + obj.getClass().getName()+" at "+tail+" ("+count+")");
         queue[tail] = null;       // Free for garbage collection
         tail = (tail+1) % capacity;
+        if( count==capacity ) notifyAll();   // Producers may be waiting
         count--;
 
-        return(obj);
+        return((E)obj);
     }
 
     /**
@@ -61,11 +69,90 @@ public class BoundedBuffer
 
         return(list);
     }
+
+    /**
+     * Move as many objects as will fit into the supplied array, starting
+     * at index 0. If there are none, this call blocks until at least one
+     * object is entered by another thread. Waiting producers are woken
+     * once for the batch.
+     * @param dest destination, re-used by the caller from batch to batch
+     * @return the number of objects moved
+     */
+    public int drainTo(E[] dest) throws InterruptedException  {
+        return drainTo(dest,dest.length);
+    }
+
+    /**
+     * Move up to max objects into the supplied array, starting at index 0.
+     * If there are none, this call blocks until at least one object is
+     * entered by another thread. A limit of zero returns at once.
+     * Waiting producers are woken once for the batch.
+     * @param dest destination, re-used by the caller from batch to batch
+     * @param max the most objects to move, limited by the length of dest
+     * @return the number of objects moved
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int drainTo(E[] dest,int max) throws InterruptedException  {
+        int limit = Math.max(0,Math.min(max,dest.length));
+        if( limit==0 ) return(0);
+        waitWhileEmpty();
+        int n = Math.min(count,limit);
+        int i = 0;
+        try {
+            while( i<n ) {
+                dest[i] = (E)queue[tail];
+                queue[tail] = null;
+                tail = (tail+1) % capacity;
+                i++;
+            }
+        }
+        finally {
+            moved(i);
+        }
+        return(i);
+    }
+
+    /**
+     * Move all objects into the supplied collection. If there are none,
+     * this call blocks until at least one object is entered by another
+     * thread. Waiting producers are woken once for the batch.
+     * @param dest destination, typically cleared and re-used by the caller
+     * @return the number of objects moved
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int drainTo(Collection<? super E> dest) throws InterruptedException  {
+        waitWhileEmpty();
+        int n = count;
+        int i = 0;
+        try {
+            while( i<n ) {
+                dest.add((E)queue[tail]);
+                queue[tail] = null;
+                tail = (tail+1) % capacity;
+                i++;
+            }
+        }
+        finally {
+            moved(i);
+        }
+        return(i);
+    }
+
+    /**
+     * Account for objects removed by a drain, including one cut short by an
+     * exception. Waiting producers are woken once for the batch.
+     */
+    private void moved(int n) {
+        if( n==0 ) return;
+        if( count==capacity ) notifyAll();
+        count -= n;
+    }
+
     /**
      * Add an object into the queue. If the buffer is at capacity, this call
      * blocks until an object is removed by another thread.
      */
-    public synchronized void put(Object obj) throws InterruptedException {
+    public synchronized void put(E obj) throws InterruptedException {
         waitWhileFull();
 
         queue[head] = obj;
@@ -80,7 +167,7 @@ public class BoundedBuffer
      * Add an object array into the queue. If the buffer is cannot hold the
      * entire array, this call blocks until objects are removed by another thread.
      */
-    public synchronized void putAll(Object [] arr) throws InterruptedException {
+    public synchronized void putAll(E [] arr) throws InterruptedException {
         for(int i=0;i<arr.length;i++) {
             put(arr[i]);
         }
@@ -0,0 +1,326 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded multi-producer, multi-consumer buffer with the interface of
+ * BoundedBuffer. Producers and consumers wait on separate conditions, so
+ * a put wakes at most one consumer and a get wakes at most one producer,
+ * rather than every waiting thread. Batch operations transfer as many
+ * objects as possible per acquisition of the lock and signal once per
+ * batch.
+ *
+ * In addition to the BoundedBuffer methods, there are timed offer() and
+ * poll(). The drainTo() methods have the same signatures and blocking
+ * behaviour as those of BoundedBuffer.
+ */
+public class ConcurrentBoundedBuffer<E>   {
+	private final Object[] queue;
+	private final int capacity;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private int head = 0;       // Next spot to save
+	private int tail = 0;       // Next spot to retrieve
+	private int count = 0;      // Current objects in queue
+
+	/**
+	 * Create a new bounded object buffer of the specified capacity.
+	 */
+	public ConcurrentBoundedBuffer(int cap) {
+		if(cap<1) cap = 1;
+		this.capacity = cap;
+		this.queue = new Object[capacity];
+	}
+
+	/**
+	 * Retrieve an object from the queue. If there are none, this call
+	 * blocks until an object is entered by another thread.
+	 */
+	public E get() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while( count==0 ) {
+				notEmpty.await();
+			}
+			return dequeue();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve an object from the queue, waiting up to the specified time
+	 * for one to arrive.
+	 * @return the object, or null if the time elapsed first.
+	 */
+	public E poll(long timeout,TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while( count==0 ) {
+				if( nanos<=0 ) return null;
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieve all objects from the queue. If there are none, this call
+	 * blocks until at least one object is entered by another thread.
+	 */
+	public Object[] getAll() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while( count==0 ) {
+				notEmpty.await();
+			}
+			Object[] list = new Object[count];
+			transfer(list,0,count);
+			return list;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Move as many objects as will fit into the supplied array, starting
+	 * at index 0. If there are none, this call blocks until at least one
+	 * object is entered by another thread.
+	 * @param dest destination, re-used by the caller from batch to batch
+	 * @return the number of objects moved
+	 */
+	public int drainTo(E[] dest) throws InterruptedException {
+		return drainTo(dest,dest.length);
+	}
+
+	/**
+	 * Move up to max objects into the supplied array, starting at index 0.
+	 * If there are none, this call blocks until at least one object is
+	 * entered by another thread. A limit of zero returns at once.
+	 * @param dest destination, re-used by the caller from batch to batch
+	 * @param max the most objects to move, limited by the length of dest
+	 * @return the number of objects moved
+	 */
+	public int drainTo(E[] dest,int max) throws InterruptedException {
+		int limit = Math.max(0,Math.min(max,dest.length));
+		if( limit==0 ) return 0;
+		lock.lockInterruptibly();
+		try {
+			while( count==0 ) {
+				notEmpty.await();
+			}
+			int n = Math.min(count,limit);
+			transfer(dest,0,n);
+			return n;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Move all objects into the supplied collection. If there are none,
+	 * this call blocks until at least one object is entered by another
+	 * thread.
+	 * @param dest destination, typically cleared and re-used by the caller
+	 * @return the number of objects moved
+	 */
+	@SuppressWarnings("unchecked")
+	public int drainTo(Collection<? super E> dest) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while( count==0 ) {
+				notEmpty.await();
+			}
+			int n = count;
+			int i = 0;
+			try {
+				while( i<n ) {
+					dest.add((E)queue[tail]);
+					queue[tail] = null;
+					tail = (tail+1==capacity?0:tail+1);
+					i++;
+				}
+			}
+			finally {
+				// Account for the objects moved, even if the collection refused one
+				if( i>0 ) {
+					count -= i;
+					if( i==1 ) notFull.signal();
+					else notFull.signalAll();
+				}
+			}
+			return i;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add an object into the queue. If the buffer is at capacity, this call
+	 * blocks until an object is removed by another thread.
+	 */
+	public void put(E obj) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while( count==capacity ) {
+				notFull.await();
+			}
+			enqueue(obj);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add an object into the queue, waiting up to the specified time for
+	 * space to become available.
+	 * @return true if the object was added.
+	 */
+	public boolean offer(E obj,long timeout,TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while( count==capacity ) {
+				if( nanos<=0 ) return false;
+				nanos = notFull.awaitNanos(nanos);
+			}
+			enqueue(obj);
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add an object array into the queue. If the buffer cannot hold the
+	 * entire array, this call blocks until objects are removed by another
+	 * thread. The objects are added in order, as space allows.
+	 */
+	public void putAll(E[] arr) throws InterruptedException {
+		int index = 0;
+		while( index<arr.length ) {
+			lock.lockInterruptibly();
+			try {
+				while( count==capacity ) {
+					notFull.await();
+				}
+				int n = Math.min(capacity-count,arr.length-index);
+				for(int i=0;i<n;i++) {
+					queue[head] = arr[index++];
+					head = (head+1==capacity?0:head+1);
+				}
+				count += n;
+				if( n==1 ) notEmpty.signal();
+				else notEmpty.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Wait until the buffer has at least one object in it.
+	 */
+	public void waitWhileEmpty() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while( count==0 ) {
+				notEmpty.await();
+			}
+			notEmpty.signal();    // We did not consume, pass the signal on
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wait until the buffer has at least one free spot in it.
+	 */
+	public void waitWhileFull() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while( count==capacity ) {
+				notFull.await();
+			}
+			notFull.signal();     // We did not produce, pass the signal on
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/* **********************************************************************
+	 *                       Getters/Setters
+	 * **********************************************************************
+	 */
+	/** @return the queue capacity. */
+	public int getCapacity() { return(this.capacity); }
+	/** @return a count of the number of objects in the queue.*/
+	public int getCount() {
+		lock.lock();
+		try {
+			return this.count;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	/** @return true if the queue is empty.*/
+	public boolean isEmpty() { return getCount()==0; }
+	/** @return true if the queue is full.*/
+	public boolean isFull() { return getCount()==capacity; }
+
+	// The caller holds the lock and has checked for space
+	private void enqueue(E obj) {
+		queue[head] = obj;
+		head = (head+1==capacity?0:head+1);
+		count++;
+		notEmpty.signal();
+	}
+
+	// The caller holds the lock and has checked for an object
+	@SuppressWarnings("unchecked")
+	private E dequeue() {
+		E obj = (E)queue[tail];
+		queue[tail] = null;       // Free for garbage collection
+		tail = (tail+1==capacity?0:tail+1);
+		count--;
+		notFull.signal();
+		return obj;
+	}
+
+	// Move n objects into the array. The caller holds the lock.
+	private void transfer(Object[] dest,int offset,int n) {
+		int first = Math.min(n,capacity-tail);
+		System.arraycopy(queue, tail, dest, offset, first);
+		Arrays.fill(queue, tail, tail+first, null);
+		if( n>first ) {
+			System.arraycopy(queue, 0, dest, offset+first, n-first);
+			Arrays.fill(queue, 0, n-first, null);
+		}
+		tail = (tail+n)%capacity;
+		count -= n;
+		if( n==1 ) notFull.signal();
+		else notFull.signalAll();
+	}
+}
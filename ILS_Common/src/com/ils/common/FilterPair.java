@@ -18,6 +18,9 @@ public class FilterPair {
 		this.value= s2;
 	}
 
+	public String getKey() { return this.key; }
+	public String getValue() { return this.value; }
+
 	@Override
 	public boolean equals(Object arg) {
 		boolean result = false;
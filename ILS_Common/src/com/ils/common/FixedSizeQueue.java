@@ -1,37 +1,473 @@
 /**
- *   (c) 2014-2017  ILS Automation. All rights reserved. 
+ *   (c) 2014-2025  ILS Automation. All rights reserved.
  */
 package com.ils.common;
 
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
 
-public class FixedSizeQueue<E> extends LinkedList<E>  {
-	private static final long serialVersionUID = 5843873110116467006L;
+/**
+ * A rolling history of bounded length. When an addition would exceed the
+ * buffer size, the eldest entry is discarded. Index 0 is the eldest entry.
+ *
+ * The rule applies wherever an entry is inserted. An entry added at the
+ * head of a full queue (addFirst, push, add(0,e)) would itself be the
+ * eldest, thus it is discarded and the queue is unchanged.
+ *
+ * The entries are held in a circular array that grows, as needed, up to the
+ * buffer size. Additions do not allocate once it is full. All methods are
+ * synchronized. Iteration is over a snapshot taken when the iterator is
+ * created, thus it is safe in the presence of concurrent additions. Changes
+ * made through an iterator are applied to the queue, provided that it has
+ * not been modified since the snapshot was taken. Otherwise they fail with
+ * a ConcurrentModificationException.
+ */
+public class FixedSizeQueue<E> extends AbstractList<E> implements Deque<E>, RandomAccess, java.io.Serializable  {
+	private static final long serialVersionUID = -2218350785063409152L;
+	private static final int INITIAL_CAPACITY = 16;
 	private int bufferSize = 10;
-	
+	private Object[] elements;
+	private int head = 0;       // Position of the eldest entry
+	private int count = 0;
+
 	public FixedSizeQueue(int length) {
 		this.bufferSize = length;
+		this.elements = new Object[Math.max(0, Math.min(length, INITIAL_CAPACITY))];
 	}
-	
+
 	public int getBufferSize() { return bufferSize; }
-	
+
 	public synchronized void setBufferSize(int size) {
 		// Whittle down the list, if necessary
 		if( size<1 ) size = 0;
-		while( this.size()>size ) {
-			remove();
+		while( count>size ) {
+			removeFirst();
 		}
 		bufferSize = size;
+		if( elements.length>size ) resize(size);
+	}
+
+	@Override
+	public synchronized boolean add(E o) {
+		if( bufferSize>0) {
+			if( count==bufferSize ) {
+				elements[head] = o;      // The array is full, overwrite the eldest
+				head = (head+1)%elements.length;
+				modCount++;
+				return true;
+			}
+			if( count==elements.length ) resize(Math.min(bufferSize, Math.max(INITIAL_CAPACITY, 2*count)));
+			elements[(head+count)%elements.length] = o;
+			count++;
+			modCount++;
+		}
+		return true;
+	}
+
+	/**
+	 * Add the entries of the collection in order. If there are more than
+	 * the buffer size, only the latest are retained.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean addAll(Collection<? extends E> c) {
+		Object[] arr = c.toArray();          // Outside the lock, c may be this
+		synchronized(this) {
+			if( bufferSize<=0 || arr.length==0 ) return arr.length>0;
+			int start = 0;
+			if( arr.length>=bufferSize ) {
+				clear();
+				resize(bufferSize);
+				start = arr.length-bufferSize;
+			}
+			for(int i=start;i<arr.length;i++) {
+				add((E)arr[i]);
+			}
+			return true;
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized E get(int index) {
+		checkIndex(index);
+		return (E)elements[(head+index)%elements.length];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized E set(int index, E o) {
+		checkIndex(index);
+		int pos = (head+index)%elements.length;
+		E old = (E)elements[pos];
+		elements[pos] = o;
+		return old;
+	}
+
+	/**
+	 * Insert an entry at the specified position. If the queue is full, the
+	 * eldest entry is discarded. At position 0, that is the new entry.
+	 */
+	@Override
+	public synchronized void add(int index, E o) {
+		if( index<0 || index>count ) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+count);
+		if( bufferSize<=0 ) return;
+		if( count==bufferSize ) {
+			if( index==0 ) return;   // The new entry is the eldest
+			removeFirst();
+			index--;
+		}
+		if( count==elements.length ) resize(Math.min(bufferSize, Math.max(INITIAL_CAPACITY, 2*count)));
+		if( index==0 ) {
+			head = (head+elements.length-1)%elements.length;
+		}
+		else {
+			for(int i=count;i>index;i--) {
+				elements[(head+i)%elements.length] = elements[(head+i-1)%elements.length];
+			}
+		}
+		elements[(head+index)%elements.length] = o;
+		count++;
+		modCount++;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized E remove(int index) {
+		checkIndex(index);
+		E old = (E)elements[(head+index)%elements.length];
+		removeRange(index,index+1);
+		return old;
+	}
+
+	@Override
+	public synchronized boolean remove(Object o) {
+		int index = indexOf(o);
+		if( index<0 ) return false;
+		removeRange(index,index+1);
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if( c==null ) throw new NullPointerException();
+		return removeIf(e->c.contains(e));
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		if( c==null ) throw new NullPointerException();
+		return removeIf(e->!c.contains(e));
+	}
+
+	@Override
+	public synchronized boolean removeIf(Predicate<? super E> filter) {
+		Object[] snapshot = toArray();
+		int kept = 0;
+		for(Object o:snapshot) {
+			@SuppressWarnings("unchecked")
+			E e = (E)o;
+			if( !filter.test(e) ) snapshot[kept++] = o;
+		}
+		if( kept==count ) return false;
+		clear();
+		for(int i=0;i<kept;i++) {
+			elements[i] = snapshot[i];
+		}
+		head = 0;
+		count = kept;
+		return true;
+	}
+
+	@Override
+	public synchronized int indexOf(Object o) {
+		for(int i=0;i<count;i++) {
+			Object e = elements[(head+i)%elements.length];
+			if( o==null ? e==null : o.equals(e) ) return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public synchronized int lastIndexOf(Object o) {
+		for(int i=count-1;i>=0;i--) {
+			Object e = elements[(head+i)%elements.length];
+			if( o==null ? e==null : o.equals(e) ) return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean contains(Object o) { return indexOf(o)>=0; }
+
+	@Override
+	public synchronized int size() { return count; }
+
+	@Override
+	public synchronized void clear() {
+		for(int i=0;i<count;i++) {
+			elements[(head+i)%elements.length] = null;
+		}
+		head = 0;
+		count = 0;
+		modCount++;
+	}
+
+	/**
+	 * Remove the entries from the lower index, inclusive, to the upper,
+	 * exclusive. This is the means by which a sub-list is cleared.
+	 */
+	@Override
+	protected synchronized void removeRange(int fromIndex, int toIndex) {
+		if( fromIndex<0 || toIndex>count || fromIndex>toIndex ) {
+			throw new IndexOutOfBoundsException("From: "+fromIndex+", To: "+toIndex+", Size: "+count);
+		}
+		int n = toIndex-fromIndex;
+		if( n==0 ) return;
+		for(int i=fromIndex;i<count-n;i++) {
+			elements[(head+i)%elements.length] = elements[(head+i+n)%elements.length];
+		}
+		for(int i=count-n;i<count;i++) {
+			elements[(head+i)%elements.length] = null;
+		}
+		count -= n;
+		modCount++;
+	}
+
+	@Override
+	public synchronized Object[] toArray() {
+		Object[] result = new Object[count];
+		copyInto(result);
+		return result;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T[] toArray(T[] a) {
+		if( a.length<count ) a = (T[])java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), count);
+		copyInto(a);
+		if( a.length>count ) a[count] = null;
+		return a;
+	}
+
+	/**
+	 * @return an iterator over a snapshot of the entries, eldest first.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new Itr(0);
+	}
+
+	@Override
+	public ListIterator<E> listIterator(int index) {
+		return new Itr(index);
+	}
+
+	/**
+	 * @return an iterator over a snapshot of the entries, latest first.
+	 */
+	@Override
+	public Iterator<E> descendingIterator() {
+		ListIterator<E> itr = new Itr(-1);
+		return new Iterator<E>() {
+			@Override
+			public boolean hasNext() { return itr.hasPrevious(); }
+			@Override
+			public E next() { return itr.previous(); }
+			@Override
+			public void remove() { itr.remove(); }
+		};
+	}
+
+	// ================================== Queue ======================================
+	@Override
+	public boolean offer(E o) { return add(o); }
+	@Override
+	public E remove() { return removeFirst(); }
+	@Override
+	public synchronized E poll() { return (count==0?null:removeFirst()); }
+	@Override
+	public E element() { return getFirst(); }
+	@Override
+	public E peek() { return peekFirst(); }
+
+	// ================================== Deque ======================================
+	@Override
+	public void addFirst(E o) { add(0,o); }
+	@Override
+	public void addLast(E o) { add(o); }
+	/**
+	 * @return false if the entry was discarded, as the queue is full.
+	 */
+	@Override
+	public synchronized boolean offerFirst(E o) {
+		if( count>=bufferSize ) return false;
+		add(0,o);
+		return true;
+	}
+	@Override
+	public boolean offerLast(E o) { return add(o); }
+	@Override
+	public void push(E o) { addFirst(o); }
+	@Override
+	public E pop() { return removeFirst(); }
+	@Override
+	public synchronized E pollFirst() { return (count==0?null:removeFirst()); }
+	@Override
+	public synchronized E pollLast()  { return (count==0?null:removeLast()); }
+	@Override
+	public boolean removeFirstOccurrence(Object o) { return remove(o); }
+	@Override
+	public synchronized boolean removeLastOccurrence(Object o) {
+		int index = lastIndexOf(o);
+		if( index<0 ) return false;
+		removeRange(index,index+1);
+		return true;
+	}
+	@Override
+	public synchronized E getFirst() {
+		if( count==0 ) throw new NoSuchElementException();
+		return get(0);
+	}
+	@Override
+	public synchronized E getLast() {
+		if( count==0 ) throw new NoSuchElementException();
+		return get(count-1);
+	}
+	@Override
+	public synchronized E peekFirst() { return (count==0?null:get(0)); }
+	@Override
+	public synchronized E peekLast()  { return (count==0?null:get(count-1)); }
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized E removeFirst() {
+		if( count==0 ) throw new NoSuchElementException();
+		E old = (E)elements[head];
+		elements[head] = null;
+		head = (head+1)%elements.length;
+		count--;
+		modCount++;
+		return old;
+	}
+	@Override
+	public synchronized E removeLast() {
+		if( count==0 ) throw new NoSuchElementException();
+		return remove(count-1);
+	}
+
+	/**
+	 * Iteration over a snapshot of the entries. A removal, replacement or
+	 * insertion is applied to both the snapshot and the queue, provided that
+	 * the queue has not been modified otherwise.
+	 */
+	private class Itr implements ListIterator<E> {
+		private Object[] items;
+		private int size;
+		private int cursor;
+		private int lastRet = -1;
+		private int expectedModCount;
+
+		// A negative index starts at the end
+		Itr(int index) {
+			synchronized(FixedSizeQueue.this) {
+				items = toArray();
+				expectedModCount = modCount;
+			}
+			size = items.length;
+			if( index<0 ) index = size;
+			else if( index>size ) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+			cursor = index;
+		}
+		@Override
+		public boolean hasNext() { return cursor<size; }
+		@Override
+		public boolean hasPrevious() { return cursor>0; }
+		@Override
+		public int nextIndex() { return cursor; }
+		@Override
+		public int previousIndex() { return cursor-1; }
+		@Override
+		@SuppressWarnings("unchecked")
+		public E next() {
+			if( cursor>=size ) throw new NoSuchElementException();
+			lastRet = cursor++;
+			return (E)items[lastRet];
+		}
+		@Override
+		@SuppressWarnings("unchecked")
+		public E previous() {
+			if( cursor<=0 ) throw new NoSuchElementException();
+			lastRet = --cursor;
+			return (E)items[lastRet];
+		}
+		@Override
+		public void remove() {
+			if( lastRet<0 ) throw new IllegalStateException();
+			synchronized(FixedSizeQueue.this) {
+				checkForComodification();
+				removeRange(lastRet,lastRet+1);
+				expectedModCount = modCount;
+			}
+			System.arraycopy(items, lastRet+1, items, lastRet, size-lastRet-1);
+			items[--size] = null;
+			cursor = lastRet;
+			lastRet = -1;
+		}
+		@Override
+		public void set(E o) {
+			if( lastRet<0 ) throw new IllegalStateException();
+			synchronized(FixedSizeQueue.this) {
+				checkForComodification();
+				FixedSizeQueue.this.set(lastRet,o);
+			}
+			items[lastRet] = o;
+		}
+		/**
+		 * Insert before the cursor. If the queue is full, the eldest entry is
+		 * discarded. The snapshot is re-taken.
+		 */
+		@Override
+		public void add(E o) {
+			synchronized(FixedSizeQueue.this) {
+				checkForComodification();
+				int before = count;
+				FixedSizeQueue.this.add(cursor,o);
+				cursor = Math.max(0, cursor+1-(before+1-count));
+				items = toArray();
+				expectedModCount = modCount;
+			}
+			size = items.length;
+			lastRet = -1;
+		}
+		private void checkForComodification() {
+			if( modCount!=expectedModCount ) throw new ConcurrentModificationException();
+		}
+	}
+
+	private void checkIndex(int index) {
+		if( index<0 || index>=count ) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+count);
+	}
+
+	// Copy the entries, eldest first, into the start of the array
+	private void copyInto(Object[] dest) {
+		int first = Math.min(count, elements.length-head);
+		System.arraycopy(elements, head, dest, 0, first);
+		System.arraycopy(elements, 0, dest, first, count-first);
+	}
+
+	// Re-allocate the ring, moving the eldest entry to position 0
+	private void resize(int length) {
+		if( length==elements.length || length<count ) return;
+		Object[] larger = new Object[length];
+		copyInto(larger);
+		elements = larger;
+		head = 0;
 	}
-	
-	@Override
-    public synchronized boolean add(E o) {
-        if( bufferSize>0) {
-        	super.add(o);
-        	while (size() > bufferSize) {
-        		remove(); 
-        	}
-        }
-        return true;
-    }
 }
@@ -1,11 +1,14 @@
 /**
- *   (c) 2013  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  */
 package com.ils.common;
 
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.RandomAccess;
@@ -21,14 +24,40 @@ import com.inductiveautomation.ignition.common.util.LoggerEx;
  *  
  *  This class has methods that allow retrieval of a set number of 
  *  objects that are, optionally, filtered on a key and value.
+ *  
+ *  To make filtering inexpensive, we maintain an inverted index from each
+ *  key-value pair to a bit map of the buffer slots whose entries carry that
+ *  pair. A filtered query is then the intersection of the bit maps of the
+ *  filter terms. The index is updated as entries are added and overwritten.
+ *  
+ *  Attribute keys and values are interned in a dictionary shared by all
+ *  entries of the buffer. Each distinct key-value pair is assigned an integer
+ *  code, and an entry retains only the sorted array of its codes and the
+ *  interned pairs. Consecutive entries with identical attributes share the
+ *  same arrays. Once no entry in the buffer carries a pair, its code is freed
+ *  and may be re-assigned. Thus the dictionary is bounded by the contents of
+ *  the buffer, not by the number of distinct pairs ever seen. It works best
+ *  for attributes with few distinct values (project, module, level and the like).
+ *  
+ *  Each entry is also assigned a sequence number that increases monotonically
+ *  for the life of the buffer (it is not reset by clear()). Polling clients
+ *  use readSince() with the sequence as a cursor to obtain only those entries
+ *  that they have not yet seen.
  */
 public class KeyedCircularBuffer implements RandomAccess {
 	private final String TAG = "KeyedCircularBuffer: ";
 	private final LoggerEx log;
 	private final int n;             // buffer length
 	private final FilterableValue[] buf; // a List implementing RandomAccess
+	private final Map<String,Map<String,Integer>> dictionary; // key, value to code
+	private final List<BitSet> index;    // code to occupied slots
+	private final List<FilterPair> pairs;// code to key-value pair, null if free
+	private final BitSet freeCodes;      // codes available for re-use
+	private int[] lastCodes = null;      // codes of the most recently encoded entry
+	private FilterPair[] lastPairs = null;
 	private int leader = 0;
 	private int size = 0;
+	private long sequence = 0;           // sequence number of the next entry
 
 
 	/**
@@ -41,6 +70,10 @@ public class KeyedCircularBuffer implements RandomAccess {
 		log = LogUtil.getLogger(getClass().getPackage().getName());
 		n = capacity + 1;
 		buf = new FilterableValue[n];
+		dictionary = new HashMap<>();
+		index = new ArrayList<>();
+		pairs = new ArrayList<>();
+		freeCodes = new BitSet();
 		size = 0;
 	}
 	
@@ -54,8 +87,12 @@ public class KeyedCircularBuffer implements RandomAccess {
 	public synchronized void add(Map<String,String>map,Object data) {
 		if( data==null || map==null) return;   // No effect
 		log.debugf("%s add %s at %d", TAG,data.toString(),leader);
-		FilterableValue fv = new FilterableValue(leader,map,data);
+		if( buf[leader]!=null ) unindex(buf[leader]);   // Before the codes of the new entry are assigned
+		int[] codes = encode(map);
+		FilterableValue fv = new FilterableValue(leader,sequence,codes,lastPairs,data);
+		sequence++;
 		buf[leader] = fv;
+		index(fv);
 		leader = wrapIndex(++leader);
 		if(size < n-1) this.size++;
 	}
@@ -69,6 +106,12 @@ public class KeyedCircularBuffer implements RandomAccess {
 			buf[index]=null;
 			index++;
 		}
+		dictionary.clear();
+		this.index.clear();
+		pairs.clear();
+		freeCodes.clear();
+		lastCodes = null;
+		lastPairs = null;
 		this.size = 0;      
 	}
 	
@@ -98,41 +141,92 @@ public class KeyedCircularBuffer implements RandomAccess {
 	public synchronized FilterableValue[] getRecentValuesFiltered(List<FilterPair> filters,int max) {
 		if( max>size ) max = size;
 		FilterableValue[] values = new FilterableValue[max];
-		int i = wrapIndex(leader-max);
-		int index = 0;
-		while(i != leader) {
-			if( buf[i]==null ) break;
-			if( buf[i].matches(filters)) {
-				values[index] = buf[i];
-				index++;
-			}
-			i = wrapIndex(++i);
+		BitSet slots = matchingSlots(filters);
+		int start = wrapIndex(leader-max);
+		if( start+max<=n ) {
+			collect(slots,start,start+max,values,0);
+		}
+		else {   // The range wraps
+			int count = collect(slots,start,n,values,0);
+			collect(slots,0,leader,values,count);
 		}
 		return values;
 	}
 	
 	/**
+	 * The start index is a buffer position and wraps. For incremental reads, use readSince().
 	 * @return an array of members that match the filter and are newer than the specified start index, 
 	 *         in chronological order up to a specified maximum count. The trailing entries of the array may be null.
 	 */
 	public synchronized FilterableValue[] getRecentValuesFilteredFromIndex(List<FilterPair> filters,int start,int max) {
 		if( max>size ) max = size;
 		FilterableValue[] values = new FilterableValue[max];
-		int i = wrapIndex(leader-max);
-		int index = 0;
-		while(i != leader) {
-			if( buf[i]==null ) break;
-			if( buf[i].getIndex()<start) break;
-			if( buf[i].matches(filters)) {
-				values[index] = buf[i];
-				index++;
-			}
-			i = wrapIndex(++i);
+		int first = wrapIndex(leader-max);
+		if( first<start ) return values;   // The oldest is already older than start
+		BitSet slots = matchingSlots(filters);
+		if( first+max<=n ) {
+			collect(slots,first,first+max,values,0);
+		}
+		else {   // The range wraps. Slot 0 is older than any positive start
+			int count = collect(slots,first,n,values,0);
+			if( start<=0 ) collect(slots,0,leader,values,count);
 		}
 		return values;
 	}
 	
 	
+	/**
+	 * Read the entries added since a client's previous read. The cursor is
+	 * the sequence number of the next entry the client has not yet seen. A
+	 * new client starts with a cursor of 0. Subsequent reads use the cursor
+	 * returned by the previous read.
+	 * 
+	 * If entries newer than the cursor have already been discarded (the 
+	 * buffer has lapped the client), the read starts with the oldest entry
+	 * and the result is flagged as an overrun.
+	 * 
+	 * @param cursor sequence number of the first entry of interest
+	 * @param filters key-value pairs, all of which must be present in a match.
+	 *        May be empty.
+	 * @param max the maximum number of entries to return. If less than one,
+	 *        there is no limit.
+	 * @return the matching entries in chronological order, the cursor for
+	 *         the next read and the overrun indicator.
+	 */
+	public synchronized IncrementalRead readSince(long cursor,List<FilterPair> filters,int max) {
+		boolean overrun = false;
+		long oldest = sequence - size;
+		if( cursor<oldest ) {
+			overrun = true;
+			cursor = oldest;
+		}
+		else if( cursor>sequence ) {
+			cursor = sequence;
+		}
+		if( max<1 ) max = size;
+		List<FilterableValue> values = new ArrayList<>();
+		BitSet slots = matchingSlots(filters);
+		int count = (int)(sequence-cursor);    // Entries to be examined
+		int first = wrapIndex(leader-count);
+		long next = -1;
+		if( first+count<=n ) {
+			next = scan(slots,first,first+count,values,max);
+		}
+		else {   // The range wraps
+			next = scan(slots,first,n,values,max);
+			if( next<0 ) next = scan(slots,0,leader,values,max);
+		}
+		if( next<0 ) next = sequence;         // Everything was examined
+		return new IncrementalRead(values.toArray(new FilterableValue[values.size()]),next,overrun);
+	}
+	
+	/**
+	 * @return the sequence number that will be assigned to the next entry.
+	 */
+	public synchronized long getSequence() {
+		return this.sequence;
+	}
+	
 	/**
 	 * @return the current number of observations in the history
 	 */
@@ -140,6 +234,166 @@ public class KeyedCircularBuffer implements RandomAccess {
 		return this.size;
 	}
 		
+	/**
+	 * @param filters key-value pairs, all of which must be present in a match
+	 * @return the slots holding entries that match all the filters. A null
+	 *         signifies that there are no filters, thus everything matches.
+	 */
+	private BitSet matchingSlots(List<FilterPair> filters) {
+		if( filters==null || filters.isEmpty() ) return null;
+		BitSet result = null;
+		for(FilterPair filter:filters) {
+			int code = codeOf(filter);
+			if( code<0 ) return new BitSet();   // Nothing has this pair
+			BitSet bits = index.get(code);
+			if( result==null ) result = (BitSet)bits.clone();
+			else result.and(bits);
+			if( result.isEmpty() ) break;
+		}
+		return result;
+	}
+	
+	/**
+	 * Copy entries from a range of slots into a result array.
+	 * @param slots the slots that qualify, null for all
+	 * @param from the first slot, inclusive
+	 * @param to the last slot, exclusive
+	 * @param values the result array
+	 * @param count the number of entries in the result so far
+	 * @return the new count of entries in the result
+	 */
+	private int collect(BitSet slots,int from,int to,FilterableValue[] values,int count) {
+		if( slots==null ) {
+			for(int i=from;i<to;i++) {
+				if( buf[i]!=null ) values[count++] = buf[i];
+			}
+		}
+		else {
+			for(int i=slots.nextSetBit(from);i>=0 && i<to;i=slots.nextSetBit(i+1)) {
+				values[count++] = buf[i];
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Append entries from a range of slots to a list, stopping when the list
+	 * reaches the specified maximum.
+	 * @param slots the slots that qualify, null for all
+	 * @param from the first slot, inclusive
+	 * @param to the last slot, exclusive
+	 * @return the sequence number following the entry that filled the list,
+	 *         -1 if the list was not filled.
+	 */
+	private long scan(BitSet slots,int from,int to,List<FilterableValue> values,int max) {
+		int i = (slots==null?from:slots.nextSetBit(from));
+		while( i>=0 && i<to ) {
+			if( buf[i]!=null ) {
+				values.add(buf[i]);
+				if( values.size()>=max ) return buf[i].getSequence()+1;
+			}
+			i = (slots==null?i+1:slots.nextSetBit(i+1));
+		}
+		return -1;
+	}
+	
+	/**
+	 * Record the slot of an entry in the index of each of its pairs.
+	 */
+	private void index(FilterableValue fv) {
+		for(int code:fv.codes) {
+			index.get(code).set(fv.index);
+		}
+	}
+	
+	/**
+	 * Remove the slot of an entry that is being overwritten from the index.
+	 * A pair that no longer appears in the buffer is removed from the dictionary.
+	 */
+	private void unindex(FilterableValue fv) {
+		for(int code:fv.codes) {
+			BitSet bits = index.get(code);
+			bits.clear(fv.index);
+			if( bits.isEmpty() ) release(code);
+		}
+	}
+	
+	/**
+	 * Free a code for re-use. The arrays of the previous entry may hold it,
+	 * so they are no longer shared.
+	 */
+	private void release(int code) {
+		FilterPair pair = pairs.get(code);
+		Map<String,Integer> values = dictionary.get(pair.getKey());
+		if( values!=null ) {
+			values.remove(pair.getValue());
+			if( values.isEmpty() ) dictionary.remove(pair.getKey());
+		}
+		pairs.set(code, null);
+		freeCodes.set(code);
+		lastCodes = null;
+		lastPairs = null;
+	}
+	
+	/**
+	 * Convert a dictionary of attributes into a sorted array of codes,
+	 * adding new key-value pairs to the shared dictionary as needed. The
+	 * corresponding pairs are left in lastPairs. If the result is the same
+	 * as for the previous entry, the previous arrays are re-used. The caller
+	 * holds the lock.
+	 */
+	private int[] encode(Map<String,String> map) {
+		int[] codes = new int[map.size()];
+		int count = 0;
+		for(Map.Entry<String,String> entry:map.entrySet()) {
+			Map<String,Integer> values = dictionary.get(entry.getKey());
+			if( values==null ) {
+				values = new HashMap<>();
+				dictionary.put(entry.getKey(), values);
+			}
+			Integer code = values.get(entry.getValue());
+			if( code==null ) {
+				FilterPair pair = new FilterPair(entry.getKey(),entry.getValue());
+				int free = freeCodes.nextSetBit(0);
+				if( free>=0 ) {
+					freeCodes.clear(free);
+					pairs.set(free, pair);
+					code = Integer.valueOf(free);
+				}
+				else {
+					code = Integer.valueOf(index.size());
+					index.add(new BitSet(n));
+					pairs.add(pair);
+				}
+				values.put(entry.getValue(), code);
+			}
+			codes[count] = code.intValue();
+			count++;
+		}
+		Arrays.sort(codes);
+		if( Arrays.equals(codes, lastCodes) ) return lastCodes;
+		FilterPair[] terms = new FilterPair[codes.length];
+		for(int i=0;i<codes.length;i++) {
+			terms[i] = pairs.get(codes[i]);
+		}
+		lastCodes = codes;
+		lastPairs = terms;
+		return codes;
+	}
+	
+	/**
+	 * @return the code of a key-value pair, -1 if it has never been seen.
+	 */
+	private synchronized int codeOf(FilterPair pair) {
+		int code = -1;
+		Map<String,Integer> values = dictionary.get(pair.getKey());
+		if( values!=null ) {
+			Integer c = values.get(pair.getValue());
+			if( c!=null ) code = c.intValue();
+		}
+		return code;
+	}
+	
 	/** 
 	 * Keep an incrementing index with range of the buffer limits.
 	 * It also serves as a safe-guard to insure that any index is
@@ -172,24 +426,53 @@ public class KeyedCircularBuffer implements RandomAccess {
 		return str.toString();
 	}
 	
+	/**
+	 * An entry of the buffer. The dictionary codes are meaningful only while
+	 * the entry is in the buffer. Matching uses the pairs themselves, thus it
+	 * remains valid after the entry has been discarded.
+	 */
 	public class FilterableValue {
 		private final int index;
-		private final List<FilterPair> filterList;
+		private final long sequence;    // -1 if not created by the buffer
+		private final int[] codes;      // sorted dictionary codes of the attributes, empty if not in the buffer
+		private final FilterPair[] terms;
 		private final Object value;
 		
+		/**
+		 * Create a value that is not part of the buffer. The dictionary is unaffected.
+		 */
 		public FilterableValue(int indx,Map<String,String> map, Object val) {
 			this.index = indx;
-			this.filterList = new ArrayList<>();
-			for(String key:map.keySet()) {
-				filterList.add(new FilterPair(key,map.get(key)));
+			this.sequence = -1;
+			this.codes = new int[0];
+			this.terms = new FilterPair[map.size()];
+			int count = 0;
+			for(Map.Entry<String,String> entry:map.entrySet()) {
+				terms[count++] = new FilterPair(entry.getKey(),entry.getValue());
 			}
 			this.value = val;
 		}
+		
+		private FilterableValue(int indx,long seq,int[] codeArray,FilterPair[] pairArray, Object val) {
+			this.index = indx;
+			this.sequence = seq;
+			this.codes = codeArray;
+			this.terms = pairArray;
+			this.value = val;
+		}
 
 		public int getIndex() { return this.index; }
+		public long getSequence() { return this.sequence; }
 		public boolean matches(List<FilterPair>keys) {
 			for( FilterPair key:keys) {
-				if( !filterList.contains(key)) return false;
+				boolean found = false;
+				for(FilterPair term:terms) {
+					if( key.equals(term) ) {
+						found = true;
+						break;
+					}
+				}
+				if( !found ) return false;
 			}
 			return true;
 		}
@@ -198,4 +481,25 @@ public class KeyedCircularBuffer implements RandomAccess {
 			return String.format("%d: %s",index,value.toString());
 		}
 	}
+	
+	/**
+	 * The result of an incremental read. The cursor is to be supplied
+	 * to the next read. An overrun indicates that entries have been
+	 * lost since the previous read.
+	 */
+	public static class IncrementalRead {
+		private final FilterableValue[] values;
+		private final long cursor;
+		private final boolean overrun;
+		
+		public IncrementalRead(FilterableValue[] vals,long next,boolean lapped) {
+			this.values = vals;
+			this.cursor = next;
+			this.overrun = lapped;
+		}
+		
+		public FilterableValue[] getValues() { return this.values; }
+		public long getCursor() { return this.cursor; }
+		public boolean isOverrun() { return this.overrun; }
+	}
 }
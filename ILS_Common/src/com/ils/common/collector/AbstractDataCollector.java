@@ -1,15 +1,23 @@
 /**
- *   (c) 2013  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  */
 package com.ils.common.collector;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.ils.common.watchdog.Clock;
+import com.ils.common.watchdog.SystemClock;
+import com.ils.common.watchdog.Watchdog;
+import com.ils.common.watchdog.WatchdogTimer;
 import com.inductiveautomation.ignition.common.util.LogUtil;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
 
@@ -27,16 +35,80 @@ import com.inductiveautomation.ignition.common.util.LoggerEx;
  *  The Concrete implementation must, at a minimum, override the 
  *  methods for actual data collection.
  *  
+ *  Each subscribed point is identified by an integer handle, its index in
+ *  the observation. A subclass that retains the handle when it starts a
+ *  subscription may report updates by handle, avoiding a look-up of the
+ *  tag path. A count of the points not yet updated in the current cycle
+ *  is maintained, so that the test for a complete collection does not
+ *  require a scan of the points.
+ *  
+ *  Updates may be reported concurrently from any number of threads. They
+ *  do not synchronize on the collector. The fields of a data point are
+ *  updated under the lock of that point alone. Each point is marked with
+ *  the cycle in which it was last counted. The cycle number, the count of
+ *  points remaining and the count of subscribed points are held in a single
+ *  atomic word. The update that takes the remaining count to zero also
+ *  starts the next cycle, thus exactly one thread completes each cycle and
+ *  informs the listeners. Changes to the set of points, the end-of-cycle
+ *  accounting and the notification of listeners synchronize on the collector.
+ *  
+ *  If the collector is given an ObservationPool, each completed cycle is
+ *  published as a snapshot in the data complete event. The snapshot is a
+ *  pooled observation, thus a consumer that adds it to a history buffer
+ *  sharing the same pool need not clone the prototype and the observations
+ *  are recycled as the history is discarded. The snapshot is shared by the
+ *  listeners. It is reference-counted, and is not re-used until every
+ *  listener that retained it has released it.
+ *  
+ *  Listeners are normally informed by the thread that completes the cycle,
+ *  with the collector locked. A listener may instead be added with a bounded
+ *  queue, in which case it is informed asynchronously and cannot delay data
+ *  collection (see AsyncDataCompleteListener). The events are queued after
+ *  the collector is unlocked, in cycle order, thus a queue that blocks when
+ *  full does not prevent its listener from using the collector.
+ *  
+ *  A cycle deadline may be set. If a cycle has not completed when its deadline
+ *  passes, it is completed regardless and the listeners receive a partial
+ *  event. The points that were not updated have their missed reads
+ *  incremented. The deadlines are watchdogs on the timing engine shared with
+ *  the TimeoutTimers, thus there is no thread per collector. A deadline is
+ *  measured from the start of its cycle. The start of a cycle merely records
+ *  the time; the deadline dog is re-positioned by the engine when it expires.
+ *  Thus the collector does not take the engine's lock as cycles complete.
+ *  While no point is subscribed, the dog is cancelled.
+ *
  *  NOTE: A CopyOnWriteArrayList handles synchronization issues internally.
  */
 public abstract class AbstractDataCollector  {
 	private static final String TAG = "AbstractDataCollector";
+	private static final int INACTIVE = DataPoint.INACTIVE;
+	private static final int COUNT_BITS = 20;                   // Limits a collector to ~1M points
+	private static final long COUNT_MASK = (1L<<COUNT_BITS)-1;
+	private static final long REMAINING_UNIT = 1L<<COUNT_BITS;
+	private static final int CYCLE_MASK = 0xFFFFFF;             // Cycle numbers wrap at 24 bits
+	private static final AtomicIntegerFieldUpdater<DataPoint> MARK =
+			AtomicIntegerFieldUpdater.newUpdater(DataPoint.class, "cycle");
 	private final LoggerEx log;
 	private List<DataCompleteListener> listenerList = new CopyOnWriteArrayList<DataCompleteListener>();
 	protected CollectorState state;
 	private final Observation prototype;
-	private final Hashtable<String,Integer> positionMap;
-	private int badReadTolerance = 0;
+	private final Map<String,Integer> positionMap;
+	private volatile int badReadTolerance = 0;
+	private final AtomicLong cycle = new AtomicLong(0);          // cycle | remaining | subscribed
+	private volatile ObservationPool pool = null;
+	private volatile long deadline = 0;                          // ~ msecs, 0 if none
+	private Clock deadlineClock = SystemClock.INSTANCE;
+	private volatile WatchdogTimer deadlineEngine = null;        // Held between start and stop
+	private volatile Watchdog deadlineDog = null;
+	private final AtomicBoolean deadlineArmed = new AtomicBoolean(false);
+	private volatile long cycleStart = 0;                        // ~ msecs on the deadline clock
+	private volatile int startedCycle = -1;                      // The cycle for which cycleStart was recorded
+	private long queuedIssued = 0;                               // Turns to inform queued listeners, guarded by the lock
+	private long queuedServed = 0;                               // Turns taken, guarded by queuedOrder
+	private final Object queuedOrder = new Object();
+	private boolean completing = false;                          // Guarded by the lock
+	private List<DataCompleteEvent> deferredEvents = null;       // Awaiting the queued listeners, guarded by the lock
+	private long deferredTurn = 0;                               // Turn of the first deferred event
 
 	/**
 	 * Constructor: 
@@ -49,16 +121,52 @@ public abstract class AbstractDataCollector  {
 		this.prototype = obs;
 		this.log = LogUtil.getLogger(getClass().getPackage().getName());
 		this.state = CollectorState.RESET;
-		this.positionMap = new Hashtable<String,Integer>();
+		this.positionMap = new ConcurrentHashMap<String,Integer>();
 	}
 
 	public void addDataCompleteListener(DataCompleteListener listener) {
 		listenerList.add(listener);
 	}
+	
+	/**
+	 * Add a listener that is informed asynchronously. Events are queued for the
+	 * listener and delivered by a pool thread.
+	 * @param listener
+	 * @param capacity the maximum number of events pending delivery
+	 * @param policy the handling of an event when the queue is full
+	 * @return the wrapper that queues the events. It provides delivery metrics.
+	 */
+	public AsyncDataCompleteListener addDataCompleteListener(DataCompleteListener listener,int capacity,OverflowPolicy policy) {
+		AsyncDataCompleteListener async = new AsyncDataCompleteListener(listener,capacity,policy);
+		listenerList.add(async);
+		return async;
+	}
 
+	/**
+	 * Remove a listener. If the listener was added for asynchronous delivery,
+	 * its pending events are discarded.
+	 */
 	public void removeDataCompleteListener(DataCompleteListener listener) {
+		for(DataCompleteListener registered:listenerList) {
+			if( registered instanceof AsyncDataCompleteListener && 
+			   (registered==listener || ((AsyncDataCompleteListener)registered).getListener()==listener) ) {
+				((AsyncDataCompleteListener)registered).close();
+				listenerList.remove(registered);
+			}
+		}
 		listenerList.remove(listener);
 	}
+	
+	/**
+	 * @return the listeners that are informed asynchronously, for access to their metrics.
+	 */
+	public List<AsyncDataCompleteListener> getAsyncListeners() {
+		List<AsyncDataCompleteListener> list = new ArrayList<>();
+		for(DataCompleteListener registered:listenerList) {
+			if( registered instanceof AsyncDataCompleteListener ) list.add((AsyncDataCompleteListener)registered);
+		}
+		return list;
+	}
 	/**
 	 * Invalidate the indicated point by setting it to null. 
 	 * Stop any subscription on the existing point. 
@@ -67,11 +175,19 @@ public abstract class AbstractDataCollector  {
 	 * @param index the index of the old data point.
 	 */
 	public void removeDataPoint(int index) {
+		DataPoint point = null;
 		// Operate on the existing array.
-		if( index<prototype.dataPoints.length && prototype.dataPoints[index]!=null ) {
-			log.tracef("%s: removeDataPoint. Removing data point at %d (%s)",TAG,index,prototype.dataPoints[index].tagPath);
-			stopSubscription(prototype.dataPoints[index]); 
-			prototype.dataPoints[index] = null;  // Don't use any more
+		synchronized(this) {
+			if( index<prototype.dataPoints.length && prototype.dataPoints[index]!=null ) {
+				point = prototype.dataPoints[index];
+				log.tracef("%s: removeDataPoint. Removing data point at %d (%s)",TAG,index,point.tagPath);
+				if( point.tagPath!=null ) positionMap.remove(point.tagPath);
+				prototype.dataPoints[index] = null;  // Don't use any more
+			}
+		}
+		if( point!=null ) {
+			stopSubscription(point);
+			deactivate(point);
 		}
 	}
 	
@@ -87,20 +203,29 @@ public abstract class AbstractDataCollector  {
 	 */
 	public void replaceDataPoint(DataPoint point, int oldIndex) {
 		if( point==null ) return;
-		DataPoint[] newPoints = new DataPoint[prototype.dataPoints.length+1];
-		// Move the existing points over - including any recent data values.
-		for(int i=0;i<newPoints.length-1;i++) {
-			newPoints[i] = prototype.dataPoints[i];
-			if( i==oldIndex) {
-				stopSubscription(prototype.dataPoints[i]);
-				newPoints[i] = null;  // Don't use any more
+		DataPoint old = null;
+		synchronized(this) {
+			DataPoint[] newPoints = new DataPoint[prototype.dataPoints.length+1];
+			// Move the existing points over - including any recent data values.
+			for(int i=0;i<newPoints.length-1;i++) {
+				newPoints[i] = prototype.dataPoints[i];
+				if( i==oldIndex) {
+					old = prototype.dataPoints[i];
+					if( old!=null && old.tagPath!=null ) positionMap.remove(old.tagPath);
+					newPoints[i] = null;  // Don't use any more
+				}
 			}
+			newPoints[prototype.dataPoints.length] = point;
+			if( point.tagPath!=null ) positionMap.put(point.tagPath, new Integer(point.index));
+			prototype.dataPoints = newPoints;
+			log.tracef("%s: replaceDataPoint. extended point array to %d with %s",TAG,prototype.dataPoints.length,point.tagPath);
+		}
+		if( old!=null ) {
+			stopSubscription(old);
+			deactivate(old);
 		}
-		newPoints[prototype.dataPoints.length] = point;
+		if( point.tagPath!=null ) activate(point);
 		startSubscription(point);
-		positionMap.put(point.tagPath, new Integer(point.index));
-		prototype.dataPoints = newPoints;
-		log.tracef("%s: replaceDataPoint. extended point array to %d with %s",TAG,prototype.dataPoints.length,point.tagPath);
 	}
 	/**
 	 * @return the number of data points being collected.
@@ -117,7 +242,8 @@ public abstract class AbstractDataCollector  {
 			DataPoint point = prototype.dataPoints[index];
 			if( point.tagPath!=null ) {
 				stopSubscription(point);
-				positionMap.remove(new Integer(point.index));
+				positionMap.remove(point.tagPath);
+				deactivate(point);
 			}
 			point.tagPath = null;
 		}
@@ -137,8 +263,9 @@ public abstract class AbstractDataCollector  {
 			DataPoint point = prototype.dataPoints[index];
 			if( point.tagPath==null ) {
 				point.tagPath = path;
-				startSubscription(point);
 				positionMap.put(point.tagPath, new Integer(point.index));
+				activate(point);
+				startSubscription(point);
 				result = true;
 			}
 		}
@@ -146,34 +273,73 @@ public abstract class AbstractDataCollector  {
 	}
 	
 	/**
-	 * We have received an update from one data point, see if we've got them all.
-	 * If so, then inform interested listeners. Ignore data points without
-	 * tag names, as these are assumed to be "calculated", not collected.
+	 * @param path tag path of a subscribed data point
+	 * @return the handle by which updates to the point may be reported,
+	 *         else -1 if the path is not known.
 	 */
+	protected int getHandle(String path) {
+		Integer indx = (path==null?null:positionMap.get(path));
+		return (indx==null?-1:indx.intValue());
+	}
+	
+	/**
+	 * See if we've got updates from all the data points. If so, then inform
+	 * interested listeners. Ignore data points without tag names, as these are
+	 * assumed to be "calculated", not collected. Points whose update flag was
+	 * set directly, rather than through the report methods, are counted here.
+	 * 
+	 * @deprecated The report methods no longer call this method. Each update
+	 *             is counted as it is reported, and the update that completes
+	 *             the cycle informs the listeners, thus overriding this method
+	 *             has no effect. It remains for a subclass that sets the update
+	 *             flag of a point directly.
+	 */
+	@Deprecated
 	protected void checkCollectionComplete() {
 		for( DataPoint point:prototype.dataPoints) {
-			if( point!=null && point.tagPath!=null && point.updated==false)  return;   // We're not done yet
+			if( point!=null && point.updated ) countUpdate(point);
 		}
-		initializeDataPointsForNextCycle();
-		fireDataComplete();
-
 	}
+	
+	/**
+	 * @return the number of subscribed data points not yet updated in this cycle.
+	 */
+	public int getPendingCount() { return remainingOf(cycle.get()); }
+	
 	/**
 	 * "start" is the signal to activate all our subscriptions and
 	 * start the timeout timer. Take the proxy observation and create
 	 * a subscription for each data point.
 	 */
 	public void start() {
-		int index = 0;
-		for( DataPoint point : prototype.dataPoints ) {
-			if( point!=null ) {
-				point.updated = false;
-				point.missedReads = 0;
-				point.badReads    = 0;
+		synchronized(this) {
+			int next = (cycleOf(cycle.get())+1)&CYCLE_MASK;    // Begin a fresh cycle
+			int subscribed = 0;
+			for( DataPoint point : prototype.dataPoints ) {
+				if( point==null ) continue;
+				synchronized(point) {
+					point.updated = false;
+					point.missedReads = 0;
+					point.badReads    = 0;
+				}
 				if( point.tagPath!=null ) {
 					positionMap.put(point.tagPath, new Integer(point.index));
-					startSubscription(point);
+					point.cycle = (next-1)&CYCLE_MASK;
+					subscribed++;
+				}
+				else {
+					point.cycle = INACTIVE;
 				}
+			}
+			cycle.set(pack(next,subscribed,subscribed));
+			acquireDeadlineEngine();
+		}
+		markCycleStart(cycleOf(cycle.get()));
+		armDeadline();
+		int index = 0;
+		for( DataPoint point : prototype.dataPoints ) {
+			if( point!=null ) {
+				if( point.tagPath!=null ) startSubscription(point);
 				if(log.isTraceEnabled()) {
 					log.tracef("%s: start %s (%d)",TAG, (point.tagPath==null?"null":point.tagPath),point.index);
 				}
@@ -193,6 +359,13 @@ public abstract class AbstractDataCollector  {
 		for( DataPoint point : prototype.dataPoints ) {
 			if( point!=null && point.tagPath!=null ) stopSubscription(point);
 		}
+		cancelDeadline();
+		synchronized(this) {
+			releaseDeadlineEngine();
+		}
+		for(DataCompleteListener listener:listenerList) {
+			if( listener instanceof AsyncDataCompleteListener ) ((AsyncDataCompleteListener)listener).close();
+		}
 		listenerList.clear();
 	}
 
@@ -201,12 +374,69 @@ public abstract class AbstractDataCollector  {
 	 *  notification of collection complete.
 	 */
 	protected void fireDataComplete() {
-		DataCompleteEvent event = new DataCompleteEvent();
+		fireDataComplete(new DataCompleteEvent());
+	}
+	
+	/**
+	 *  Notify all listeners of the supplied event. Listeners added with a queue
+	 *  are informed after the others. The collector calls this method, with the
+	 *  collector locked, as each cycle completes. In that case, the events for
+	 *  the listeners with a queue are queued once the collector is unlocked, in
+	 *  cycle order. A subclass that overrides this method should call it.
+	 *  
+	 *  CAUTION: A queue with the BLOCK policy may wait for space. Other than
+	 *  from the collector's own completion of a cycle, do not call this method
+	 *  with the collector locked if such a listener may use it.
+	 */
+	protected void fireDataComplete(DataCompleteEvent event) {
+		long turn = -1;
+		if( hasQueuedListeners() ) {
+			// The turn is taken first, so that an event fired by a listener follows this one
+			synchronized(this) {
+				turn = queuedIssued++;
+				if( completing ) {
+					// Queued by completeCycle once it unlocks. The turns of deferred
+					// events are consecutive, since the lock is held throughout.
+					if( deferredEvents==null ) {
+						deferredEvents = new ArrayList<>();
+						deferredTurn = turn;
+					}
+					event.retain();
+					deferredEvents.add(event);
+					turn = -1;
+				}
+			}
+		}
+		informListeners(event,false);
+		if( turn>=0 ) informQueuedListeners(event,turn);
+	}
+	
+	private boolean hasQueuedListeners() {
+		for(DataCompleteListener listener:listenerList) {
+			if( listener instanceof AsyncDataCompleteListener ) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Notify either the listeners that are informed directly or those that
+	 * have a queue.
+	 * @param queued true for the listeners with a queue
+	 */
+	private void informListeners(DataCompleteEvent event,boolean queued) {
 		List<DataCompleteListener> listenersToDisconnect = null;
 		
 		ListIterator<DataCompleteListener> iterator = listenerList.listIterator();
 		while( iterator.hasNext() ) {
 			DataCompleteListener listener = iterator.next();
+			if( (listener instanceof AsyncDataCompleteListener)!=queued ) continue;
+			// An asynchronous listener that has thrown is disconnected on the next event
+			if( queued && ((AsyncDataCompleteListener)listener).isFailed() ) {
+				((AsyncDataCompleteListener)listener).close();
+				if(listenersToDisconnect==null ) listenersToDisconnect = new ArrayList<DataCompleteListener>();
+				listenersToDisconnect.add(listener);
+				continue;
+			}
 			try {
 				listener.dataCollected(event);
 			}
@@ -224,6 +454,35 @@ public abstract class AbstractDataCollector  {
 		}
 	}
 	
+	/**
+	 * Queue an event for the listeners that have a queue, once the events of
+	 * earlier cycles have been queued. The collector is not locked.
+	 * @param turn issued, in cycle order, with the collector locked
+	 */
+	private void informQueuedListeners(DataCompleteEvent event,long turn) {
+		boolean interrupted = false;
+		synchronized(queuedOrder) {
+			while( queuedServed!=turn ) {
+				try {
+					queuedOrder.wait();
+				}
+				catch(InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+		}
+		try {
+			informListeners(event,true);
+		}
+		finally {
+			synchronized(queuedOrder) {
+				queuedServed++;
+				queuedOrder.notifyAll();
+			}
+			if( interrupted ) Thread.currentThread().interrupt();
+		}
+	}
+	
 	/**
 	 * Increment missed and bad reads, set all points update status to false. 
 	 * This method is called whenever a collection of reads is complete. However, 
@@ -235,61 +494,61 @@ public abstract class AbstractDataCollector  {
 	 * @return the number of data points that had NOT been updated this cycle.
 	 */
 	public synchronized int initializeDataPointsForNextCycle() {
-		// Mark  data points as not-yet-updated
-		// in preparation for the next round.
-		int count = 0;
-		for( DataPoint point:prototype.dataPoints) {
-			if( point==null ) continue;
-			if( point.updated == false ) {
-				count++;
-				point.missedReads++;
-				if( point.badReads > 0 ) {
-					point.badReads++;
-					if( point.badReads > badReadTolerance ) point.isGood = false;
-				}
+		for(;;) {
+			long s = cycle.get();
+			int subscribed = subscribedOf(s);
+			if( cycle.compareAndSet(s, pack(cycleOf(s)+1,subscribed,subscribed)) ) {
+				markCycleStart((cycleOf(s)+1)&CYCLE_MASK);
+				return endCycle(cycleOf(s));
 			}
-			point.updated = false;
 		}
-		return count;
 	}
+	
+	/**
+	 * Set the time allowed for a collection cycle. Cycles are timed on the system clock.
+	 * @param msecs the deadline measured from the start of each cycle. If zero,
+	 *        a cycle waits for every point without limit.
+	 */
+	public void setCycleDeadline(long msecs) {
+		setCycleDeadline(msecs,SystemClock.INSTANCE);
+	}
+	
+	/**
+	 * Set the time allowed for a collection cycle. The deadline of the current
+	 * cycle is measured from now.
+	 * @param msecs the deadline measured from the start of each cycle. If zero,
+	 *        a cycle waits for every point without limit.
+	 * @param clk the time-base of the deadlines
+	 */
+	public void setCycleDeadline(long msecs,Clock clk) {
+		cancelDeadline();
+		synchronized(this) {
+			releaseDeadlineEngine();
+			this.deadline = (msecs<0?0:msecs);
+			this.deadlineClock = (clk==null?SystemClock.INSTANCE:clk);
+			acquireDeadlineEngine();
+		}
+		markCycleStart(cycleOf(cycle.get()));
+		armDeadline();
+	}
+	
+	/**
+	 * @return the time allowed for a collection cycle ~ msecs, 0 if unlimited.
+	 */
+	public long getCycleDeadline() { return this.deadline; }
 	/**
 	 * Handle receipt of a new quality-only value. This method should be called
 	 * by the subclass whenever it receives an update via subscription where the
 	 * value is null and the TagProp is not "Property". Presumably the quality
 	 * has gone bad and the value is not available.Leave it unchanged.
 	 */
-	protected synchronized void reportQualityChanged(String path,Date ts, boolean good) {
+	protected void reportQualityChanged(String path,Date ts, boolean good) {
 		// Search the prototype for the data point with this path
 		//log.infof("%s: reportQualityChanged: tag path (%s)",TAG,path);
 		if( path!=null) {
-			Integer indx = positionMap.get(path);
-			if( indx!=null) {
-				int index = indx.intValue();
-				if( index>=0 && index<prototype.dataPoints.length && prototype.dataPoints[index]!=null) {
-					DataPoint point = prototype.dataPoints[index];
-					point.updated = true;
-					point.missedReads = 0;
-					if( good ) {
-						point.badReads = 0;
-						point.isGood = true;
-					}
-					else if( point.isGood==false){ // Already bad
-						point.badReads++;
-					}
-					else {                         // "provisionally" good			
-						point.badReads++;
-						if( point.badReads > badReadTolerance) {
-							point.isGood = false;
-						}
-					}					
-					point.timestamp = ts;
-					prototype.timestamp = ts;    // Update the prototype with the data collection time
-					log.tracef("%s: reportQualityChanged %s (index %d at %s)",TAG,path,index,ts.toString());
-					checkCollectionComplete();
-				}
-				else {
-					log.errorf("%s: reportQualityChanged: point for %s is null, index=%d",TAG,path,indx);
-				}
+			int index = getHandle(path);
+			if( index>=0 ) {
+				reportQualityChanged(index,ts,good);
 			}
 			else {
 				log.errorf("%s: reportQualityChanged: unknown tag path (%s)",TAG,path);
@@ -299,6 +558,42 @@ public abstract class AbstractDataCollector  {
 		   //log.trace(TAG+"reportQualityChanged: null (ignored) ");
 		}
 	}
+	
+	/**
+	 * Handle receipt of a new quality-only value for the data point with the
+	 * specified handle. This is the same as reportQualityChanged(path,...),
+	 * but without the look-up of the tag path.
+	 * @param handle the index of the data point
+	 */
+	protected void reportQualityChanged(int handle,Date ts, boolean good) {
+		DataPoint point = pointFor(handle);
+		if( point!=null ) {
+			synchronized(point) {
+				point.updated = true;
+				point.missedReads = 0;
+				if( good ) {
+					point.badReads = 0;
+					point.isGood = true;
+				}
+				else if( point.isGood==false){ // Already bad
+					point.badReads++;
+				}
+				else {                         // "provisionally" good
+					point.badReads++;
+					if( point.badReads > badReadTolerance) {
+						point.isGood = false;
+					}
+				}
+				point.timestamp = ts;
+			}
+			prototype.timestamp = ts;    // Update the prototype with the data collection time
+			if(log.isTraceEnabled()) log.tracef("%s: reportQualityChanged %s (index %d at %s)",TAG,point.tagPath,handle,ts.toString());
+			countUpdate(point);
+		}
+		else {
+			log.errorf("%s: reportQualityChanged: point for handle %d is null",TAG,handle);
+		}
+	}
 	/**
 	 * Handle receipt of a new data value.This method should be called
 	 * by the subclass whenever it receives an update via subscription.
@@ -311,38 +606,12 @@ public abstract class AbstractDataCollector  {
 	 *       which must be called externally, since we don't get notified unless there
 	 *       is a change.
 	 */
-	protected synchronized void reportValueChanged(String path,Date ts, Object val, boolean good) {
+	protected void reportValueChanged(String path,Date ts, Object val, boolean good) {
 		// Search the prototype for the data point with this path
 		if( val!=null && path!=null) {
-			Integer indx = positionMap.get(path);
-			if( indx!=null) {
-				int index = indx.intValue();
-				if( index>=0 && index<prototype.dataPoints.length && prototype.dataPoints[index]!=null) {
-					DataPoint point = prototype.dataPoints[index];
-					point.updated = true;
-					point.missedReads = 0;
-					if( good ) {
-						point.badReads = 0;
-						point.isGood = true;
-						point.value = val;
-					}
-					else if( point.isGood==false){ // Already bad
-						point.badReads++;
-					}
-					else {                         // "provisionally" good			
-						point.badReads++;
-						if( point.badReads > badReadTolerance) {
-							point.isGood = false;
-						}
-					}					
-					point.timestamp = ts;
-					prototype.timestamp = ts;    // Update the prototype with the data collection time
-					log.tracef("%s: reportValueChanged %s (index %d at %s)",TAG,path,index,ts.toString());
-					checkCollectionComplete();
-				}
-				else {
-					log.errorf("%s: reportValueChanged: point for %s is null, index=%d",TAG,path,indx);
-				}
+			int index = getHandle(path);
+			if( index>=0 ) {
+				reportValueChanged(index,ts,val,good);
 			}
 			else {
 				log.errorf("%s: reportValueChanged: unknown tag path (%s)",TAG,path);
@@ -352,6 +621,309 @@ public abstract class AbstractDataCollector  {
 		   //log.trace(TAG+"reportValueChanged: null (ignored) ");
 		}
 	}
+	
+	/**
+	 * Handle receipt of a new data value for the data point with the specified
+	 * handle. This is the same as reportValueChanged(path,...), but without the
+	 * look-up of the tag path. Null values are ignored.
+	 * @param handle the index of the data point
+	 */
+	protected void reportValueChanged(int handle,Date ts, Object val, boolean good) {
+		if( val==null ) return;
+		DataPoint point = pointFor(handle);
+		if( point!=null ) {
+			synchronized(point) {
+				point.updated = true;
+				point.missedReads = 0;
+				if( good ) {
+					point.badReads = 0;
+					point.isGood = true;
+					point.value = val;
+				}
+				else if( point.isGood==false){ // Already bad
+					point.badReads++;
+				}
+				else {                         // "provisionally" good
+					point.badReads++;
+					if( point.badReads > badReadTolerance) {
+						point.isGood = false;
+					}
+				}
+				point.timestamp = ts;
+			}
+			prototype.timestamp = ts;    // Update the prototype with the data collection time
+			if(log.isTraceEnabled()) log.tracef("%s: reportValueChanged %s (index %d at %s)",TAG,point.tagPath,handle,ts.toString());
+			countUpdate(point);
+		}
+		else {
+			log.errorf("%s: reportValueChanged: point for handle %d is null",TAG,handle);
+		}
+	}
+	
+	private DataPoint pointFor(int handle) {
+		DataPoint[] points = prototype.dataPoints;
+		if( handle>=0 && handle<points.length ) return points[handle];
+		return null;
+	}
+	
+	/**
+	 * Count the point as updated in the current cycle, unless it already has been
+	 * or is not subscribed. If the point is the last, the cycle is complete.
+	 */
+	private void countUpdate(DataPoint point) {
+		for(;;) {
+			long s = cycle.get();
+			int current = cycleOf(s);
+			int mark = point.cycle;
+			if( mark==INACTIVE || mark==current ) return;
+			if( !MARK.compareAndSet(point, mark, current) ) continue;
+			for(;;) {
+				s = cycle.get();
+				if( cycleOf(s)!=current ) break;        // A new cycle has begun, count the point there
+				int subscribed = subscribedOf(s);
+				if( remainingOf(s)>1 ) {
+					if( cycle.compareAndSet(s, s-REMAINING_UNIT) ) return;
+				}
+				else if( cycle.compareAndSet(s, pack(current+1,subscribed,subscribed)) ) {
+					completeCycle(current,0);
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Add a subscribed point to the count. A point that already has an update
+	 * is counted as updated in the current cycle, unless it is the only one.
+	 * A cycle with nothing remaining would never complete, so the only point
+	 * must be updated again. If the point is the only one, the deadline of the
+	 * current cycle is measured from now.
+	 */
+	private void activate(DataPoint point) {
+		if( point.cycle!=INACTIVE ) return;
+		for(;;) {
+			long s = cycle.get();
+			int current = cycleOf(s);
+			boolean counted = point.updated && remainingOf(s)>0;
+			int remaining = remainingOf(s)+(counted?0:1);
+			if( cycle.compareAndSet(s, pack(current,remaining,subscribedOf(s)+1)) ) {
+				point.cycle = (counted?current:(current-1)&CYCLE_MASK);
+				if( subscribedOf(s)==0 ) markCycleStart(current);
+				armDeadline();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Withdraw a point from the count. If the point was the last not updated,
+	 * the cycle is complete.
+	 */
+	private void deactivate(DataPoint point) {
+		int mark = MARK.getAndSet(point, INACTIVE);
+		if( mark==INACTIVE ) return;
+		for(;;) {
+			long s = cycle.get();
+			int current = cycleOf(s);
+			int remaining = remainingOf(s)-(mark==current?0:1);
+			int subscribed = subscribedOf(s)-1;
+			if( remaining<=0 ) {
+				if( cycle.compareAndSet(s, pack(current+1,subscribed,subscribed)) ) {
+					completeCycle(current,0);
+					return;
+				}
+			}
+			else if( cycle.compareAndSet(s, pack(current,remaining,subscribed)) ) return;
+		}
+	}
+
+	/**
+	 * Every subscribed point has been updated, or the deadline has passed. This is
+	 * invoked by exactly one thread per cycle. The listeners are informed through
+	 * fireDataComplete() with the collector locked. Events for the listeners with
+	 * a queue are queued after it has been unlocked. If a listener completes a
+	 * cycle in turn, its events are queued by the outermost completion.
+	 * @param completed the cycle that has ended
+	 * @param missed the number of subscribed points that were not updated
+	 */
+	private void completeCycle(int completed,int missed) {
+		markCycleStart((completed+1)&CYCLE_MASK);
+		DataCompleteEvent event = null;
+		List<DataCompleteEvent> queued = null;
+		long turn = 0;
+		try {
+			synchronized(this) {
+				boolean outermost = !completing;
+				completing = true;
+				try {
+					endCycle(completed);
+					ObservationPool p = pool;
+					if( p!=null && !listenerList.isEmpty() ) event = new DataCompleteEvent(getSnapshot(),missed,p);
+					else event = new DataCompleteEvent(null,missed);
+					fireDataComplete(event);
+				}
+				finally {
+					if( outermost ) {
+						completing = false;
+						queued = deferredEvents;
+						turn = deferredTurn;
+						deferredEvents = null;
+					}
+				}
+			}
+		}
+		finally {
+			if( queued!=null ) {
+				for(DataCompleteEvent deferred:queued) {
+					try {
+						informQueuedListeners(deferred,turn++);
+					}
+					finally {
+						deferred.release();
+					}
+				}
+			}
+			if( event!=null ) event.release();    // Listeners that keep the snapshot have retained it
+		}
+	}
+	
+	/**
+	 * The deadline dog has expired. This is invoked by the engine, never with
+	 * the collector locked. If the current cycle has passed its deadline, complete
+	 * it with those points that have been updated. Otherwise the cycle began
+	 * after the dog was set, so re-set it for the deadline of the current cycle.
+	 * If no point is subscribed, the dog is left cancelled until one is.
+	 */
+	private void deadlinePassed() {
+		WatchdogTimer engine = deadlineEngine;
+		if( engine==null || deadline==0 ) return;
+		long now = engine.getClock().currentTime();
+		for(;;) {
+			long s = cycle.get();
+			int current = cycleOf(s);
+			int subscribed = subscribedOf(s);
+			if( subscribed==0 ) {                           // Nothing to wait for
+				deadlineArmed.set(false);
+				if( subscribedOf(cycle.get())>0 ) armDeadline();   // Activated meanwhile
+				return;
+			}
+			// A cycle whose start has not yet been recorded has only just begun
+			long due = (startedCycle==current ? cycleStart : now) + deadline;
+			if( now<due ) {
+				scheduleDeadline(due-now);
+				return;
+			}
+			if( cycle.compareAndSet(s, pack(current+1,subscribed,subscribed)) ) {
+				if(log.isDebugEnabled()) log.debugf("%s: Deadline passed with %d of %d points missing",TAG,remainingOf(s),subscribed);
+				completeCycle(current,remainingOf(s));
+				scheduleDeadline(deadline);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Record the start of a cycle, from which its deadline is measured. This
+	 * takes no lock. A dog set for an earlier cycle is re-set when it expires.
+	 */
+	private void markCycleStart(int cyc) {
+		if( deadline==0 ) return;
+		cycleStart = deadlineClock.currentTime();
+		startedCycle = cyc;
+	}
+	
+	/**
+	 * Set the deadline dog, unless it is set already or there is nothing to wait for.
+	 */
+	private void armDeadline() {
+		if( deadline==0 || deadlineArmed.get() || subscribedOf(cycle.get())==0 ) return;
+		if( deadlineArmed.compareAndSet(false, true) ) {
+			long due = cycleStart+deadline-deadlineClock.currentTime();
+			scheduleDeadline(due>0?due:0);
+		}
+	}
+	
+	/**
+	 * Re-position the deadline dog under the engine's lock.
+	 * @param delay ~ msecs
+	 */
+	private void scheduleDeadline(long delay) {
+		WatchdogTimer engine = deadlineEngine;
+		Watchdog dog = deadlineDog;
+		if( engine==null || dog==null ) {
+			deadlineArmed.set(false);
+			return;
+		}
+		synchronized(engine) {
+			engine.removeWatchdog(dog);
+			dog.setDelay(delay);
+			engine.addWatchdog(dog);
+		}
+	}
+	
+	/**
+	 * Obtain the timing engine shared with the TimeoutTimers on the deadline
+	 * clock, if there is a deadline. The caller holds the lock.
+	 */
+	private void acquireDeadlineEngine() {
+		if( deadline>0 && deadlineEngine==null ) {
+			deadlineEngine = TimeoutTimer.acquireEngine(deadlineClock);
+			deadlineDog = new Watchdog(TAG+" deadline",this::deadlinePassed,deadlineEngine.getClock());
+		}
+	}
+	
+	/**
+	 * Give up the timing engine, so that it may be stopped. The caller holds the lock.
+	 */
+	private void releaseDeadlineEngine() {
+		if( deadlineEngine!=null ) {
+			deadlineEngine.removeWatchdog(deadlineDog);
+			TimeoutTimer.releaseEngine(deadlineClock);
+			deadlineEngine = null;
+			deadlineDog = null;
+		}
+	}
+	
+	private void cancelDeadline() {
+		WatchdogTimer engine = deadlineEngine;
+		if( engine!=null && deadlineDog!=null ) engine.removeWatchdog(deadlineDog);
+		deadlineArmed.set(false);
+	}
+	
+	/**
+	 * Perform the missed and bad read accounting for a cycle that has ended.
+	 * A point that has already been counted in the cycle that follows is
+	 * considered updated in both. The caller holds the lock.
+	 * @return the number of data points that had NOT been updated in the cycle.
+	 */
+	private int endCycle(int ended) {
+		int next = (ended+1)&CYCLE_MASK;
+		int count = 0;
+		for( DataPoint point:prototype.dataPoints) {
+			if( point==null ) continue;
+			synchronized(point) {
+				int mark = point.cycle;
+				boolean updated = (mark==INACTIVE ? point.updated : (mark==ended || mark==next));
+				if( updated == false ) {
+					count++;
+					point.missedReads++;
+					if( point.badReads > 0 ) {
+						point.badReads++;
+						if( point.badReads > badReadTolerance ) point.isGood = false;
+					}
+				}
+				point.updated = (mark==next);
+			}
+		}
+		return count;
+	}
+
+	private static long pack(int cyc,int remaining,int subscribed) {
+		return ((long)(cyc&CYCLE_MASK)<<(2*COUNT_BITS)) | ((remaining&COUNT_MASK)<<COUNT_BITS) | (subscribed&COUNT_MASK);
+	}
+	private static int cycleOf(long s)      { return (int)(s>>>(2*COUNT_BITS))&CYCLE_MASK; }
+	private static int remainingOf(long s)  { return (int)((s>>>COUNT_BITS)&COUNT_MASK); }
+	private static int subscribedOf(long s) { return (int)(s&COUNT_MASK); }
 
 	/**
 	 * The subclass must manage the subscriptions.
@@ -370,6 +942,33 @@ public abstract class AbstractDataCollector  {
 		this.badReadTolerance = tol;
 	}
 	
+	/**
+	 * @param p if not null, the pool from which snapshots are taken. Each completed
+	 *        cycle is then published as a snapshot in the data complete event.
+	 */
+	public void setObservationPool(ObservationPool p) {
+		this.pool = p;
+	}
+	
+	public ObservationPool getObservationPool() { return this.pool; }
+	
+	/**
+	 * Take a copy of the observation "in work". Each data point is copied
+	 * under its lock, thus it is consistent. If the collector has an
+	 * observation pool, the copy is a pooled observation, else it is new.
+	 * This is the alternative to cloning the result of getObservation().
+	 * The caller holds the only reference to a pooled copy and must release
+	 * it to the pool when done.
+	 * 
+	 * @return a snapshot of the current observation.
+	 */
+	public Observation getSnapshot() {
+		ObservationPool p = pool;
+		Observation obs = (p==null?new Observation(null,new DataPoint[0]):p.acquire());
+		obs.copyFrom(prototype);
+		return obs;
+	}
+	
 	/**
 	 * Access the observation "in work". The object returned
 	 * should be treated as "read-only. It is not a clone.
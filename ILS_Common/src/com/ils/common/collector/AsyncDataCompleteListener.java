@@ -0,0 +1,285 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.collector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ils.common.watchdog.LatencyHistogram;
+import com.inductiveautomation.ignition.common.util.LogUtil;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+
+/**
+ *  This listener decouples a DataCompleteListener from the collector. Events
+ *  are placed on a bounded queue and delivered to the wrapped listener, in
+ *  order, by a pool thread. The collector is not delayed by a slow listener
+ *  unless the queue is full and the overflow policy is BLOCK. Each listener
+ *  has its own queue, thus a slow listener does not delay the others.
+ *
+ *  There is no thread per listener. A drain task is submitted to the executor
+ *  when an event arrives at an empty queue, and runs until the queue is empty.
+ *  The default executor is shared, and creates threads as required.
+ *
+ *  Queue latency is the time from the arrival of an event to the start of its
+ *  delivery, service time is the duration of the delivery, both ~ usecs.
+ *
+ *  A pooled snapshot carried by an event is retained while the event is queued.
+ *  It is released once the event has been delivered, or if the event is dropped,
+ *  coalesced or discarded on close.
+ */
+public class AsyncDataCompleteListener implements DataCompleteListener, Runnable {
+	private static final String TAG = "AsyncDataCompleteListener";
+	public static final int DEFAULT_CAPACITY = 16;
+	private static ExecutorService sharedExecutor = null;
+	private final LoggerEx log;
+	private final DataCompleteListener listener;
+	private final OverflowPolicy policy;
+	private final Executor executor;
+	private final DataCompleteEvent[] events;
+	private final long[] arrivals;     // ~ nsecs
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private int head = 0;              // Next event to deliver
+	private int count = 0;
+	private boolean scheduled = false; // A drain task is pending or running
+	private volatile boolean closed = false;
+	private volatile boolean failed = false;
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LatencyHistogram queueLatency = new LatencyHistogram();
+	private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+	/**
+	 * Create an asynchronous listener that runs on the shared executor.
+	 * @param target the listener to be informed
+	 * @param capacity the maximum number of pending events
+	 * @param pol the handling of an event that arrives when the queue is full
+	 */
+	public AsyncDataCompleteListener(DataCompleteListener target,int capacity,OverflowPolicy pol) {
+		this(target,capacity,pol,getSharedExecutor());
+	}
+
+	/**
+	 * @param target the listener to be informed
+	 * @param capacity the maximum number of pending events
+	 * @param pol the handling of an event that arrives when the queue is full
+	 * @param exec runs the deliveries
+	 */
+	public AsyncDataCompleteListener(DataCompleteListener target,int capacity,OverflowPolicy pol,Executor exec) {
+		this.log = LogUtil.getLogger(getClass().getPackage().getName());
+		if( capacity<1 ) capacity = 1;
+		this.listener = target;
+		this.policy = (pol==null?OverflowPolicy.DROP_OLDEST:pol);
+		this.executor = exec;
+		this.events = new DataCompleteEvent[capacity];
+		this.arrivals = new long[capacity];
+	}
+
+	/**
+	 * Queue the event for delivery. This is called by the collector.
+	 */
+	@Override
+	public void dataCollected(DataCompleteEvent event) {
+		boolean submit = false;
+		lock.lock();
+		try {
+			if( closed ) return;
+			long now = System.nanoTime();
+			if( count==events.length ) {
+				if( policy==OverflowPolicy.COALESCE ) {
+					int newest = (head+count-1)%events.length;
+					events[newest].release();
+					event.retain();
+					events[newest] = event;
+					arrivals[newest] = now;
+					coalesced.increment();
+					return;
+				}
+				else if( policy==OverflowPolicy.BLOCK ) {
+					try {
+						while( count==events.length && !closed ) {
+							notFull.await();
+						}
+					}
+					catch(InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+					if( closed ) return;
+					if( count==events.length ) {   // Interrupted
+						dropped.increment();
+						return;
+					}
+					now = System.nanoTime();
+				}
+				else {
+					events[head].release();
+					events[head] = null;
+					head = (head+1)%events.length;
+					count--;
+					dropped.increment();
+				}
+			}
+			int tail = (head+count)%events.length;
+			event.retain();
+			events[tail] = event;
+			arrivals[tail] = now;
+			count++;
+			if( !scheduled ) {
+				scheduled = true;
+				submit = true;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		if( submit ) {
+			try {
+				executor.execute(this);
+			}
+			catch(RuntimeException ex) {
+				log.errorf("%s.dataCollected: Failed to schedule delivery (%s)",TAG,ex.getMessage());
+				lock.lock();
+				try {
+					scheduled = false;
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deliver the pending events, in order, until the queue is empty.
+	 */
+	@Override
+	public void run() {
+		for(;;) {
+			DataCompleteEvent event = null;
+			long arrival = 0;
+			lock.lock();
+			try {
+				if( count==0 || closed ) {
+					scheduled = false;
+					return;
+				}
+				event = events[head];
+				arrival = arrivals[head];
+				events[head] = null;
+				head = (head+1)%events.length;
+				count--;
+				notFull.signal();
+			}
+			finally {
+				lock.unlock();
+			}
+			long start = System.nanoTime();
+			queueLatency.record((start-arrival)/1000);
+			try {
+				listener.dataCollected(event);
+			}
+			catch( Exception ex ) {
+				log.error(TAG+": Exception on data collection complete ("+ex.getMessage()+")", ex);
+				failed = true;
+			}
+			finally {
+				event.release();
+			}
+			serviceTime.record((System.nanoTime()-start)/1000);
+			delivered.increment();
+		}
+	}
+
+	/**
+	 * Discard any pending events and refuse any more. A delivery in
+	 * progress is allowed to complete.
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for(int i=0;i<events.length;i++) {
+				if( events[i]!=null ) events[i].release();
+				events[i] = null;
+			}
+			count = 0;
+			notFull.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** @return the listener to which events are delivered. */
+	public DataCompleteListener getListener() { return this.listener; }
+	public OverflowPolicy getOverflowPolicy() { return this.policy; }
+	public int getCapacity() { return events.length; }
+	/** @return the number of events awaiting delivery. */
+	public int getQueueLength() {
+		lock.lock();
+		try {
+			return count;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	/** @return true if the listener has thrown an exception. */
+	public boolean isFailed() { return this.failed; }
+	public boolean isClosed() { return this.closed; }
+	public long getDeliveredCount()  { return delivered.sum(); }
+	public long getDroppedCount()    { return dropped.sum(); }
+	public long getCoalescedCount()  { return coalesced.sum(); }
+	public LatencyHistogram getQueueLatency() { return this.queueLatency; }
+	public LatencyHistogram getServiceTime()  { return this.serviceTime; }
+
+	public void resetMetrics() {
+		delivered.reset();
+		dropped.reset();
+		coalesced.reset();
+		queueLatency.reset();
+		serviceTime.reset();
+	}
+
+	/**
+	 * @return the metrics as nested maps of simple values. This is
+	 *         the form presented to Python scripts.
+	 */
+	public Map<String,Object> toMap() {
+		Map<String,Object> map = new HashMap<>();
+		map.put("listener", listener.getClass().getName());
+		map.put("policy", policy.name());
+		map.put("capacity", getCapacity());
+		map.put("queueLength", getQueueLength());
+		map.put("delivered", getDeliveredCount());
+		map.put("dropped", getDroppedCount());
+		map.put("coalesced", getCoalescedCount());
+		map.put("queueLatency", queueLatency.toMap());
+		map.put("serviceTime", serviceTime.toMap());
+		return map;
+	}
+
+	/**
+	 * @return the executor shared by asynchronous listeners. Its threads are
+	 *         daemons, created on demand and retired when idle.
+	 */
+	private static synchronized ExecutorService getSharedExecutor() {
+		if( sharedExecutor==null ) {
+			sharedExecutor = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable,TAG);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return sharedExecutor;
+	}
+}
@@ -1,5 +1,5 @@
 /**
- *   (c) 2013  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  */
 package com.ils.common.collector;
 
@@ -15,8 +15,13 @@ import com.inductiveautomation.ignition.common.util.LoggerEx;
  *  objects. The buffer has a specified capacity. As new points
  *  are added, the oldest points are discarded. The buffer
  *  is thread-safe. The "leader" marker is a null.
+ *  
+ *  If the buffer is given an ObservationPool, each observation added is
+ *  retained and is released to the pool when it is discarded. The
+ *  observations returned by the query methods are then valid only until
+ *  they are discarded.
  */
-public class CircularHistoryBuffer implements RandomAccess {
+public class CircularHistoryBuffer implements HistoryBuffer, RandomAccess {
 	private final String TAG = "CircularHistoryBuffer: ";
 	private final static long DEFAULT_OBSERVATION_INTERVAL = 60000; // 1 minute
 	private final LoggerEx log;
@@ -24,6 +29,7 @@ public class CircularHistoryBuffer implements RandomAccess {
 	private final Observation[] buf; // a List implementing RandomAccess
 	private int leader = 0;
 	private int size = 0;
+	private ObservationPool pool = null;
 
 
 	/**
@@ -50,6 +56,7 @@ public class CircularHistoryBuffer implements RandomAccess {
 	 *  observations. We use the second because it has the real measurement.
 	 *  
 	 *  It should not be possible to store an observation without a timestamp.
+	 *  The time-based queries depend on the timestamps being in order.
 	 * 
 	 * @param obs the new observation.
 	 */
@@ -64,15 +71,19 @@ public class CircularHistoryBuffer implements RandomAccess {
 			}
 			else if( obs.timestamp.getTime()<=mostRecent.timestamp.getTime()) {
 				log.debug(TAG+"Replacing observation at "+obs.timestamp.toString()+", with "+mostRecent.timestamp.toString());
-				buf[i]=obs;
+				if( mostRecent!=obs ) {
+					buf[i]=retain(obs);
+					recycle(mostRecent);
+				}
 				return;
 			}
 		}
 		else if( obs.timestamp==null ){
 			obs.timestamp = new Date(0);   // Beginning of the epoch. Should never happen.
 		}
-		buf[leader] = obs;
+		buf[leader] = retain(obs);
 		leader = wrapIndex(++leader);
+		recycle(buf[leader]);    // The oldest, if full
 		buf[leader] = null;      // We keep an empty spot
 		if(size < n-1) this.size++;
 		
@@ -86,6 +97,7 @@ public class CircularHistoryBuffer implements RandomAccess {
 	{
 		int index = 0;
 		while(index<n) {
+			recycle(buf[index]);
 			buf[index]=null;
 			index++;
 		}
@@ -100,7 +112,10 @@ public class CircularHistoryBuffer implements RandomAccess {
 		int i = wrapIndex(leader-1); // Most recent
 		int index = 0;
 		while(index<n) {
-			if( index!=i ) buf[index]=null;
+			if( index!=i ) {
+				recycle(buf[index]);
+				buf[index]=null;
+			}
 			index++;
 		}
 		this.size = 1;      
@@ -139,6 +154,8 @@ public class CircularHistoryBuffer implements RandomAccess {
 	
 	/**
 	 * Count the number of observations within a specified time in the past.
+	 * The observation timestamps are non-decreasing (see add()), so the
+	 * boundary is located with a binary search.
 	 * @param time  interval in the past, in msecs from the latest 
 	 *                timestamp in the buffer.
 	 * @return the count of observations within the indicated time.
@@ -147,25 +164,12 @@ public class CircularHistoryBuffer implements RandomAccess {
 		int count = 0;
 		if( size==0  ) return count;
 		if( size==1  ) return 1;
+		count = 1;
 		if( time>0 ) {
-			int i = wrapIndex(leader-1);
-			Observation mostRecent = buf[i];
-			Observation past = null;
-			long latest = mostRecent.timestamp.getTime();
-			count = 1;
-			for(; i != leader; i = wrapIndex(--i)){
-				past = buf[i];
-				if( past==null ) break;
-				// getTime returns milliseconds
-				if( latest - past.timestamp.getTime() >= time ) break;
-				count++;
-			}
-		}
-		// Just return the most recent
-		else {
-			count = 1;
+			long latest = buf[wrapIndex(leader-1)].timestamp.getTime();
+			// getTime returns milliseconds
+			count += size - firstNewerThan(latest-time);
 		}
-		
 		return count;
 	}
 	
@@ -178,19 +182,10 @@ public class CircularHistoryBuffer implements RandomAccess {
 		if( size==0  ) return span;
 		if( size==1  ) return span;
 		
-		int i = wrapIndex(leader-1);
-		Observation mostRecent = buf[i];
-		long recentTime = mostRecent.timestamp.getTime();
-		i = wrapIndex(--i); 
-		Observation past = null;
-		for(; i != leader; i = wrapIndex(--i)){
-			if( buf[i]==null) break;
-			past = buf[i];
-		}
-		if( past!=null ) {
-			span = recentTime - past.timestamp.getTime();
-		}
-		log.debug(TAG+"getHistoryDuration =  "+span);
+		long recentTime = buf[wrapIndex(leader-1)].timestamp.getTime();
+		long oldestTime = buf[slot(0)].timestamp.getTime();
+		span = recentTime - oldestTime;
+		if( log.isDebugEnabled() ) log.debug(TAG+"getHistoryDuration =  "+span);
 		return span;
 	}
 	
@@ -285,28 +280,18 @@ public class CircularHistoryBuffer implements RandomAccess {
 		Object result = null;
 		if( size==0 ) return result;
 		
-		log.debug(TAG+"getPastValue: ago = "+time);
-		int i = wrapIndex(leader-1);
-		Observation prior = buf[i];   // This will be the next-best.
-		long recentTime = prior.timestamp.getTime();
-		
-		for(; i != leader; i = wrapIndex(--i)){
-			if( buf[i] != null ) {
-				log.debug(TAG+"getPastValue: past="+buf[i].timestamp.toString());
-				// getTime returns milliseconds
-				if( recentTime - buf[i].timestamp.getTime() >= time ) {
-					if( index<buf[i].dataPoints.length ) {
-						if(buf[i].dataPoints[index]!=null ) {
-							result = buf[i].dataPoints[index].value;
-						}
-					}
-					return result;  
-				}
-				prior = buf[i];
+		if( log.isDebugEnabled() ) log.debug(TAG+"getPastValue: ago = "+time);
+		long recentTime = buf[wrapIndex(leader-1)].timestamp.getTime();
+		// The newest observation at least "time" older than the latest.
+		// If there is none, use the oldest.
+		int k = firstNewerThan(recentTime-time) - 1;
+		if( k<0 ) k = 0;
+		Observation past = buf[slot(k)];
+		if( index<past.dataPoints.length ) {
+			if(past.dataPoints[index]!=null ) {
+				result = past.dataPoints[index].value;
 			}
 		}
-		// Just return the most recent.
-		if( index<prior.dataPoints.length ) result = prior.dataPoints[index].value;
 		return result;
 	}
 	
@@ -337,7 +322,48 @@ public class CircularHistoryBuffer implements RandomAccess {
 	public int size() {
 		return this.size;
 	}
+	
+	public synchronized void setObservationPool(ObservationPool p) {
+		this.pool = p;
+	}
+	
+	// Take a reference to an observation that is kept, if there is a pool.
+	private Observation retain(Observation obs) {
+		if( pool!=null ) pool.retain(obs);
+		return obs;
+	}
+	
+	// Return a discarded observation to the pool, if any.
+	private void recycle(Observation obs) {
+		if( pool!=null && obs!=null ) pool.release(obs);
+	}
 		
+	/**
+	 * Binary search of the observations in chronological order. This relies
+	 * on the timestamps being non-decreasing.
+	 * @param cutoff time ~ msecs
+	 * @return the position (0 is the oldest) of the first observation newer
+	 *         than the cutoff. If there is none, the current size.
+	 */
+	private int firstNewerThan(long cutoff) {
+		int lo = 0;
+		int hi = size;
+		while( lo<hi ) {
+			int mid = (lo+hi)>>>1;
+			if( buf[slot(mid)].timestamp.getTime()>cutoff ) hi = mid;
+			else lo = mid+1;
+		}
+		return lo;
+	}
+	
+	/**
+	 * @param k position in chronological order, 0 is the oldest
+	 * @return the slot of the k-th observation
+	 */
+	private int slot(int k) {
+		return wrapIndex(leader-size+k);
+	}
+	
 	/** 
 	 * Keep an incrementing index with range of the buffer limits.
 	 * It also serves as a safe-guard to insure that any index is
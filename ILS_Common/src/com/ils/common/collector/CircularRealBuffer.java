@@ -1,5 +1,5 @@
 /**
- *   (c) 2013-2017  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  */
 package com.ils.common.collector;
 
@@ -11,43 +11,76 @@ import com.inductiveautomation.ignition.common.util.LoggerEx;
  *  A CircularRealBuffer contains an array of doubles. It has a specified 
  *  capacity. As new points are added, the oldest points are discarded. 
  *  The buffer is thread-safe. The "leader" marker is a null.
+ *  
+ *  Statistics of the values currently in the buffer (sum, mean, variance,
+ *  minimum, maximum and least-squares slope) are maintained incrementally
+ *  as values are added. They may be queried at any time without copying
+ *  the buffer. The variance is computed with Welford's method. Minimum and
+ *  maximum are kept in monotonic queues of sample sequence numbers. To 
+ *  limit the accumulation of round-off, the running sums are recomputed
+ *  from the buffer contents each time the buffer has turned over.
  */
 public class CircularRealBuffer implements RandomAccess {
 	private final String TAG = "CircularRealBuffer: ";
 	private final LoggerEx log;
-	private final int n;             // buffer length
+	private final int capacity;      // maximum number of entries
+	private final int mask;          // buffer length - 1, the length is a power of two
 	private final double[] buf;
 	private int leader = 0;
 	private int size = 0;            // current number of entries
+	private long count = 0;          // number of values added since clear, the next sequence
+	// Running statistics
+	private double sum = 0.;
+	private double sumSquares = 0.;
+	private double weightedSum = 0.; // sum of value*position, the oldest is position 0
+	private double mean = 0.;
+	private double m2 = 0.;          // sum of squared deviations from the mean (Welford)
+	private int slides = 0;          // values evicted since the last re-computation
+	private final long[] minQueue;   // sequence numbers, values ascending
+	private final long[] maxQueue;   // sequence numbers, values descending
+	private long minHead = 0;
+	private long minTail = 0;
+	private long maxHead = 0;
+	private long maxTail = 0;
 
 
 	/**
 	 * Create a new real-value buffer with the specified capacity.
-	 * We create an additional spot for the "leader" marker position.
+	 * We create an additional spot for the "leader" marker position,
+	 * then round the length up to a power of two so that indices
+	 * may be wrapped with a mask.
 	 * 
 	 * @param capacity - maximum number of observations retained
 	 */
 	public CircularRealBuffer(int capacity) {
 		if( capacity<0 ) capacity = 0;
 		log = LogUtil.getLogger(getClass().getPackage().getName());
-		log.debug(String.format("%s create with capacity %d", TAG,capacity));
-		n = capacity + 1;
-		buf = new double[n];
+		if( log.isDebugEnabled() ) log.debugf("%s create with capacity %d", TAG,capacity);
+		this.capacity = capacity;
+		int length = 1;
+		while( length<capacity+1 ) length = length<<1;
+		mask = length - 1;
+		buf = new double[length];
+		minQueue = new long[length];
+		maxQueue = new long[length];
 		size = 0;
 	}
 	
 	/**
 	 * Add a new value to the buffer, presumably losing the oldest
-	 * value already there. 
+	 * value already there. This method does not allocate.
 	 * 
 	 * @param val the new value.
 	 */
 	public synchronized void add(double val)
 	{ 
-		log.debug(String.format("%s add %f at %d", TAG,val,leader));
+		if( log.isDebugEnabled() ) log.debugf("%s add %f at %d", TAG,val,leader);
+		if( capacity>0 ) updateStatistics(val);
 		buf[leader] = val;
-		leader = wrapIndex(++leader);
-		if(size < n-1) this.size++;
+		leader = (leader+1) & mask;
+		count++;
+		if(size < capacity) this.size++;
+		if( slides>=capacity && capacity>0 ) recomputeStatistics();
 	}
 
 	/**
@@ -57,6 +90,10 @@ public class CircularRealBuffer implements RandomAccess {
 	{
 		this.leader = 0;
 		this.size = 0;      
+		this.count = 0;
+		minHead = minTail = 0;
+		maxHead = maxTail = 0;
+		recomputeStatistics();
 	}
 
 
@@ -111,20 +148,142 @@ public class CircularRealBuffer implements RandomAccess {
 	public int size() {
 		return this.size;
 	}
+	
+	/* **********************************************************************
+	 *  Statistics of the current contents. Each is O(1). An empty buffer
+	 *  yields NaN.
+	 * **********************************************************************
+	 */
+	/** @return the sum of the values in the buffer */
+	public synchronized double getSum() {
+		return (size==0?Double.NaN:sum);
+	}
+	/** @return the sum of the squares of the values in the buffer */
+	public synchronized double getSumOfSquares() {
+		return (size==0?Double.NaN:sumSquares);
+	}
+	/** @return the mean of the values in the buffer */
+	public synchronized double getMean() {
+		return (size==0?Double.NaN:mean);
+	}
+	/** @return the sample variance of the values in the buffer. Zero for a single value. */
+	public synchronized double getVariance() {
+		if( size==0 ) return Double.NaN;
+		if( size==1 ) return 0.;
+		return m2/(size-1);
+	}
+	/** @return the sample standard deviation of the values in the buffer */
+	public synchronized double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+	/** @return the smallest value in the buffer */
+	public synchronized double getMinimum() {
+		if( size==0 ) return Double.NaN;
+		return buf[slot(minQueue[(int)(minHead&mask)])];
+	}
+	/** @return the largest value in the buffer */
+	public synchronized double getMaximum() {
+		if( size==0 ) return Double.NaN;
+		return buf[slot(maxQueue[(int)(maxHead&mask)])];
+	}
+	/**
+	 * The slope is the least-squares fit of the values against their
+	 * position in the buffer, that is the change per sample.
+	 * @return the slope of the values in the buffer. Zero for a single value.
+	 */
+	public synchronized double getSlope() {
+		if( size==0 ) return Double.NaN;
+		if( size==1 ) return 0.;
+		double m = size;
+		return 12.*(weightedSum - (m-1.)*sum/2.)/(m*(m*m-1.));
+	}
+	
+	/**
+	 * Update the running statistics for a new value. This must be called
+	 * before the value is stored and before the size is incremented. 
+	 */
+	private void updateStatistics(double val) {
+		if( size<capacity ) {        // Window grows
+			int m = size;
+			weightedSum += m*val;
+			sum += val;
+			sumSquares += val*val;
+			double delta = val - mean;
+			mean += delta/(m+1);
+			m2 += delta*(val-mean);
+		}
+		else {                       // Window slides, the oldest is dropped
+			double old = buf[wrapIndex(leader-capacity)];
+			int m = capacity;
+			weightedSum += (m-1)*val - (sum-old);
+			sum += val - old;
+			sumSquares += val*val - old*old;
+			double prior = mean;
+			mean += (val-old)/m;
+			m2 += (val-old)*(val-mean+old-prior);
+			if( m2<0. ) m2 = 0.;
+			slides++;
+		}
+		// Monotonic queues. Drop the entry that leaves the window, then
+		// any entries that can no longer be the extreme.
+		long oldest = count + 1 - capacity;
+		if( minHead<minTail && minQueue[(int)(minHead&mask)]<oldest ) minHead++;
+		while( minHead<minTail && buf[slot(minQueue[(int)((minTail-1)&mask)])]>=val ) minTail--;
+		minQueue[(int)(minTail&mask)] = count;
+		minTail++;
+		if( maxHead<maxTail && maxQueue[(int)(maxHead&mask)]<oldest ) maxHead++;
+		while( maxHead<maxTail && buf[slot(maxQueue[(int)((maxTail-1)&mask)])]<=val ) maxTail--;
+		maxQueue[(int)(maxTail&mask)] = count;
+		maxTail++;
+	}
+	
+	/**
+	 * Compute the running sums afresh from the buffer contents.
+	 */
+	private void recomputeStatistics() {
+		sum = 0.;
+		sumSquares = 0.;
+		weightedSum = 0.;
+		mean = 0.;
+		m2 = 0.;
+		int i = wrapIndex(leader-size);
+		for(int position=0;position<size;position++) {
+			double val = buf[i];
+			sum += val;
+			sumSquares += val*val;
+			weightedSum += position*val;
+			i = wrapIndex(i+1);
+		}
+		if( size>0 ) {
+			mean = sum/size;
+			i = wrapIndex(leader-size);
+			for(int position=0;position<size;position++) {
+				double delta = buf[i]-mean;
+				m2 += delta*delta;
+				i = wrapIndex(i+1);
+			}
+		}
+		slides = 0;
+	}
+	
+	/**
+	 * @param seq sequence number of a value
+	 * @return the slot of the value in the buffer
+	 */
+	private int slot(long seq) {
+		return (int)seq & mask;
+	}
 		
 	/** 
 	 * Keep an incrementing index with range of the buffer limits.
 	 * It also serves as a safe-guard to insure that any index is
-	 * within bounds.
+	 * within bounds. The buffer length is a power of two, so a
+	 * mask suffices (this works for negative indices as well).
 	 * @param i
 	 * @return an index into the history buffer, guaranteed to be within range
 	 */
 	private int wrapIndex(int i) {
-		int m = i % n;
-		if (m < 0) { // modulus can be negative
-			m += n;
-		}
-		return m;
+		return i & mask;
 	}
 
 	/**
@@ -0,0 +1,390 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.collector;
+
+
+
+import java.util.BitSet;
+import java.util.Date;
+import java.util.RandomAccess;
+
+import com.inductiveautomation.ignition.common.util.LogUtil;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+/**
+ *  A ColumnarHistoryBuffer is an alternative to the CircularHistoryBuffer
+ *  for large histories of numeric observations. Rather than retaining the
+ *  Observation objects themselves, the buffer decomposes each observation
+ *  into primitive "columns": the timestamps are held in a single long[] ring,
+ *  the value of each data point in its own double[] ring and the quality
+ *  of each data point in a bit set. The storage is allocated once, when
+ *  the buffer is created, and is never re-allocated.
+ *
+ *  Only numeric (and boolean) values are retained. Any other value, including
+ *  null, is recorded as "no value" and is returned as a null. Numbers are returned
+ *  as Doubles, booleans as 1.0 or 0.0. Observations returned by the query methods
+ *  are re-constructed from the columns. They are copies - edits to them
+ *  are not reflected in the history. Bad/missed read counts are not retained.
+ *
+ *  Since the observations are not retained, an ObservationPool given to the
+ *  buffer is not used. The caller of add() may release a pooled observation
+ *  as soon as the call returns.
+ *
+ *  The buffer is thread-safe.
+ */
+public class ColumnarHistoryBuffer implements HistoryBuffer, RandomAccess {
+	private final String TAG = "ColumnarHistoryBuffer: ";
+	private final static long DEFAULT_OBSERVATION_INTERVAL = 60000; // 1 minute
+	private final LoggerEx log;
+	private final int n;               // buffer length
+	private final int points;          // data points per observation
+	private final long[] times;        // observation timestamps ~ msecs
+	private final double[][] values;   // [point][slot], NaN signifies no value
+	private final BitSet[] quality;    // [point], a set bit signifies good quality
+	private final String[] tagPaths;   // [point], the most recent path of each point
+	private int leader = 0;            // next slot to be written
+	private int size = 0;
+	private ObservationPool pool = null;
+
+
+	/**
+	 * Create a new history buffer with the specified capacity.
+	 *
+	 * @param capacity - maximum number of observations retained
+	 * @param pointCount - number of data points in each observation. Any
+	 *                     additional points in an observation are ignored.
+	 */
+	public ColumnarHistoryBuffer(int capacity,int pointCount) {
+		log = LogUtil.getLogger(getClass().getPackage().getName());
+		if( capacity<1 ) capacity = 1;
+		if( pointCount<0 ) pointCount = 0;
+		n = capacity;
+		points = pointCount;
+		times = new long[n];
+		values = new double[points][n];
+		quality = new BitSet[points];
+		tagPaths = new String[points];
+		for(int p=0;p<points;p++) {
+			quality[p] = new BitSet(n);
+		}
+		size = 0;
+	}
+
+	/**
+	 * Add a new observation to the buffer, presumably losing the oldest
+	 * observation already there. The rules for observations without a
+	 * timestamp, or with a timestamp that is not newer than the most
+	 * recent entry, are the same as for the CircularHistoryBuffer.
+	 *
+	 * @param obs the new observation.
+	 */
+	public synchronized void add(Observation obs)
+	{
+		if( obs==null) return;   // No effect
+		if( this.size>0 ) {
+			int i = wrapIndex(leader-1);
+			if( obs.timestamp==null ) {
+				obs.timestamp = new Date(times[i]+getObservationInterval());
+			}
+			else if( obs.timestamp.getTime()<=times[i]) {
+				if( log.isDebugEnabled() ) {
+					log.debug(TAG+"Replacing observation at "+obs.timestamp.toString()+", with "+new Date(times[i]).toString());
+				}
+				store(i,obs);
+				return;
+			}
+		}
+		else if( obs.timestamp==null ){
+			obs.timestamp = new Date(0);   // Beginning of the epoch. Should never happen.
+		}
+		store(leader,obs);
+		leader = wrapIndex(leader+1);
+		if(size < n) this.size++;
+
+		if( log.isTraceEnabled() ) {
+			log.tracef("%s: Added observation to history at %s",TAG,obs.timestamp.toString());
+		}
+	}
+
+	/**
+	 * Clear all entries from the buffer.
+	 */
+	public synchronized void clear()
+	{
+		this.leader = 0;
+		this.size = 0;
+	}
+	/**
+	 * Clear all except the current observation from the buffer.
+	 */
+	public synchronized void clearHistory()
+	{
+		if( size==0 ) return;
+		this.size = 1;
+	}
+	/**
+	 * @return a copy of the most recent observation.
+	 */
+	public synchronized Observation getCurrentObservation() {
+		Observation result = null;
+		if( size==0  ) return result;
+		result = materialize(wrapIndex(leader-1));
+		return result;
+	}
+
+	/**
+	 * Count the number of observations within a specified time in the past.
+	 * The count is computed in the same manner as the CircularHistoryBuffer,
+	 * using a binary search.
+	 * @param time  interval in the past, in msecs from the latest
+	 *                timestamp in the buffer.
+	 * @return the count of observations within the indicated time.
+	 */
+	public synchronized int getObservationCount(long time) {
+		int count = 0;
+		if( size==0  ) return count;
+		if( size==1  ) return 1;
+		count = 1;
+		if( time>0 ) {
+			long latest = times[wrapIndex(leader-1)];
+			count += size - firstNewerThan(latest-time);
+		}
+		return count;
+	}
+
+	/**
+	 * Determine the current span of the historical record.
+	 * @return the time between the newest and oldest records ~ msecs.
+	 */
+	public synchronized long getHistoryDuration() {
+		long span = 0;
+		if( size<2  ) return span;
+		span = times[wrapIndex(leader-1)] - times[slot(0)];
+		return span;
+	}
+
+	/**
+	 * Assuming the intervals between consecutive observations are constant,
+	 * return the time differential between the latest and previous.
+	 *
+	 * @return evaluation interval in milliseconds. If there is
+	 * only a single entry in the table, return a default.
+	 */
+	public synchronized long getObservationInterval() {
+		long result = DEFAULT_OBSERVATION_INTERVAL;
+		if( size>1 ) {
+			result = times[wrapIndex(leader-1)] - times[wrapIndex(leader-2)];
+		}
+		return result;
+	}
+
+	/**
+	 * @return an array of all members, in chronological order
+	 */
+	public synchronized Observation[] getHistory() {
+		Observation[] observations = new Observation[size];
+		for(int k=0;k<size;k++) {
+			observations[k] = materialize(slot(k));
+		}
+		return observations;
+	}
+
+	/**
+	 * @param timeInterval ~ msecs
+	 * @return an array of members younger than a specified interval, newest first.
+	 *         As with the CircularHistoryBuffer, the trailing entry may be null.
+	 */
+	public synchronized Observation[] getHistory(long timeInterval) {
+		int count = getObservationCount(timeInterval);
+		if( count==0 ) return null;     // No observations at all
+		Observation[] observations = new Observation[count];
+		int index = 0;
+		while( index<count && index<size) {
+			observations[index] = materialize(wrapIndex(leader-1-index));
+			index++;
+		}
+		return observations;
+	}
+
+	/**
+	 * @param count of of observations in the past to jump to
+	 * @return an array of a specified number of members, newest first.
+	 */
+	public synchronized Observation[] getPastObservations(int count) {
+		if( count==0 ) return null;     // No observations at all
+		if( count>size()) return null;  // Don't return a partial array
+		Observation[] observations = new Observation[count];
+		int index = 0;
+		while( index<count) {
+			observations[index] = materialize(wrapIndex(leader-1-index));
+			index++;
+		}
+		return observations;
+	}
+
+	/**
+	 * Find a data value in the past. Take the value of the most recent
+	 * observation that is at least the specified interval older than
+	 * the newest. If there is none, use the oldest. If the buffer is
+	 * empty, return a null.
+	 *
+	 * @param index  index of the data point desired. If the index
+	 *                is out of range, we throw an index-out-of-bounds
+	 *                exception.
+	 * @param time  interval in the past, in msecs from the latest
+	 *                time stamp in the buffer.
+	 * @return the value of the selected data point.
+	 */
+	public synchronized Object getPastValue(int index,long time) {
+		Object result = null;
+		if( size==0 ) return result;
+
+		long recentTime = times[wrapIndex(leader-1)];
+		int k = firstNewerThan(recentTime-time) - 1;
+		if( k<0 ) k = 0;
+		result = toObject(values[index][slot(k)]);
+		return result;
+	}
+
+	/**
+	 * Find a data value immediately preceding the current one. If there are less than
+	 * two entries return a null.
+	 *
+	 * @param index  index of the data point desired. If the index
+	 *                is out of range, we throw an index-out-of-bounds
+	 *                exception.
+	 * @return the value of the selected data point.
+	 */
+	public synchronized Object getPriorValue(int index) {
+		Object result = null;
+		if( size < 2 ) return result;
+		result = toObject(values[index][wrapIndex(leader-2)]);
+		return result;
+	}
+
+	/**
+	 * @return the number of data points retained for each observation
+	 */
+	public int getPointCount() {
+		return this.points;
+	}
+
+	/**
+	 * @return the current number of observations in the history
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public synchronized void setObservationPool(ObservationPool p) {
+		this.pool = p;
+	}
+
+	/**
+	 * Decompose an observation into the columns at the specified slot.
+	 */
+	private void store(int slot,Observation obs) {
+		times[slot] = obs.timestamp.getTime();
+		DataPoint[] data = obs.dataPoints;
+		for(int p=0;p<points;p++) {
+			DataPoint point = (data!=null && p<data.length ? data[p] : null);
+			if( point==null ) {
+				values[p][slot] = Double.NaN;
+				quality[p].clear(slot);
+			}
+			else {
+				values[p][slot] = toDouble(point.value);
+				quality[p].set(slot,point.isGood);
+				if( point.tagPath!=null ) tagPaths[p] = point.tagPath;
+			}
+		}
+	}
+
+	/**
+	 * Re-construct an observation from the columns at the specified slot.
+	 */
+	private Observation materialize(int slot) {
+		long time = times[slot];
+		DataPoint[] data = new DataPoint[points];
+		for(int p=0;p<points;p++) {
+			DataPoint point = new DataPoint(p,tagPaths[p]);
+			point.timestamp = new Date(time);
+			point.isGood = quality[p].get(slot);
+			point.value = toObject(values[p][slot]);
+			data[p] = point;
+		}
+		return new Observation(new Date(time),data);
+	}
+
+	private double toDouble(Object val) {
+		double result = Double.NaN;
+		if( val instanceof Number ) {
+			result = ((Number)val).doubleValue();
+		}
+		else if( val instanceof Boolean ) {
+			result = (((Boolean)val).booleanValue()?1.0:0.0);
+		}
+		return result;
+	}
+
+	private Object toObject(double val) {
+		if( Double.isNaN(val) ) return null;
+		return Double.valueOf(val);
+	}
+
+	/**
+	 * Binary search of the observations in chronological order. This relies
+	 * on the timestamps being non-decreasing.
+	 * @param cutoff time ~ msecs
+	 * @return the position (0 is the oldest) of the first observation newer
+	 *         than the cutoff. If there is none, the current size.
+	 */
+	private int firstNewerThan(long cutoff) {
+		int lo = 0;
+		int hi = size;
+		while( lo<hi ) {
+			int mid = (lo+hi)>>>1;
+			if( times[slot(mid)]>cutoff ) hi = mid;
+			else lo = mid+1;
+		}
+		return lo;
+	}
+
+	/**
+	 * @param k position in chronological order, 0 is the oldest
+	 * @return the slot of the k-th observation
+	 */
+	private int slot(int k) {
+		return wrapIndex(leader-size+k);
+	}
+
+	/**
+	 * Keep an incrementing index with range of the buffer limits.
+	 * It also serves as a safe-guard to insure that any index is
+	 * within bounds.
+	 * @param i
+	 * @return an index into the history buffer, guaranteed to be within range
+	 */
+	private int wrapIndex(int i) {
+		int m = i % n;
+		if (m < 0) { // modulus can be negative
+			m += n;
+		}
+		return m;
+	}
+
+	/**
+	 * This is a debugging aid. We attempt to print a
+	 * meaningful rendering of the buffer.
+	 */
+	public synchronized String toString()
+	{
+		StringBuilder str = new StringBuilder(size());
+		for(int k=0;k<size;k++) {
+			str.append(materialize(slot(k)).toString());
+			str.append("\n");
+		}
+		return str.toString();
+	}
+
+}
@@ -0,0 +1,210 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.collector;
+
+import java.util.RandomAccess;
+import java.util.concurrent.locks.StampedLock;
+
+import com.inductiveautomation.ignition.common.util.LogUtil;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+/**
+ *  A ConcurrentRealBuffer is a variant of the CircularRealBuffer intended
+ *  for a single writer (e.g. a tag subscription) and many readers that
+ *  poll at high frequency. Readers never take a monitor and never block
+ *  the writer. Each write increments a sequence counter (a StampedLock
+ *  used in the manner of a "seqlock"). A reader copies what it needs,
+ *  then re-checks the counter. If a write intervened, the reader simply
+ *  tries again. Consequently, the arrays returned by getValues() and
+ *  getLastNValues() are consistent snapshots.
+ *
+ *  Writes from several threads are safe, but they are serialized.
+ */
+public class ConcurrentRealBuffer implements RandomAccess {
+	private final String TAG = "ConcurrentRealBuffer: ";
+	private final LoggerEx log;
+	private final StampedLock sequence = new StampedLock();
+	private final int n;             // buffer length
+	private final double[] buf;
+	private int leader = 0;
+	private int size = 0;            // current number of entries
+
+
+	/**
+	 * Create a new real-value buffer with the specified capacity.
+	 *
+	 * @param capacity - maximum number of observations retained
+	 */
+	public ConcurrentRealBuffer(int capacity) {
+		if( capacity<1 ) capacity = 1;
+		log = LogUtil.getLogger(getClass().getPackage().getName());
+		if( log.isDebugEnabled() ) log.debugf("%s create with capacity %d", TAG,capacity);
+		n = capacity;
+		buf = new double[n];
+		size = 0;
+	}
+
+	/**
+	 * Add a new value to the buffer, presumably losing the oldest
+	 * value already there.
+	 *
+	 * @param val the new value.
+	 */
+	public void add(double val) {
+		long stamp = sequence.writeLock();
+		try {
+			buf[leader] = val;
+			leader = wrapIndex(leader+1);
+			if(size < n) this.size++;
+		}
+		finally {
+			sequence.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Clear all entries from the buffer.
+	 */
+	public void clear() {
+		long stamp = sequence.writeLock();
+		try {
+			this.leader = 0;
+			this.size = 0;
+		}
+		finally {
+			sequence.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @return a snapshot of all members, in chronological order
+	 */
+	public double[] getValues() {
+		double[] values = null;
+		long stamp = sequence.tryOptimisticRead();
+		for(;;) {
+			int ldr = leader;
+			int count = size;
+			if( values==null || values.length!=count ) values = new double[count];
+			copy(values,ldr,count);
+			if( sequence.validate(stamp) ) break;
+			stamp = retry();
+		}
+		return values;
+	}
+
+	/**
+	 * @param count the number of values desired. The count is limited
+	 *        to the current size of the buffer.
+	 * @return a snapshot of the most recent members, in chronological order
+	 */
+	public double[] getLastNValues(int count) {
+		if( count<0 ) count = 0;
+		double[] values = null;
+		long stamp = sequence.tryOptimisticRead();
+		for(;;) {
+			int ldr = leader;
+			int m = (count<size?count:size);
+			if( values==null || values.length!=m ) values = new double[m];
+			copy(values,ldr,m);
+			if( sequence.validate(stamp) ) break;
+			stamp = retry();
+		}
+		return values;
+	}
+
+	/** Get the most recently added  value */
+	public double getLastValue() {
+		return getRecentValue(1);
+	}
+
+	/** Get the next most recently added  value */
+	public double getNextToLastValue() {
+		return getRecentValue(2);
+	}
+
+	/**
+	 * @return the current number of observations in the history
+	 */
+	public int size() {
+		long stamp = sequence.tryOptimisticRead();
+		for(;;) {
+			int result = size;
+			if( sequence.validate(stamp) ) return result;
+			stamp = retry();
+		}
+	}
+
+	/**
+	 * @param age 1 for the most recent value, 2 for the one before ...
+	 * @return the value
+	 */
+	private double getRecentValue(int age) {
+		long stamp = sequence.tryOptimisticRead();
+		for(;;) {
+			int count = size;
+			double val = buf[wrapIndex(leader-age)];
+			if( sequence.validate(stamp) ) {
+				if( count < age ) throw new IllegalArgumentException("Empty buffer");
+				return val;
+			}
+			stamp = retry();
+		}
+	}
+
+	/**
+	 * Copy the most recent values into the supplied array.
+	 * The result is valid only if the sequence is subsequently validated.
+	 */
+	private void copy(double[] values,int ldr,int count) {
+		int i = wrapIndex(ldr-count);
+		for(int index=0;index<count;index++) {
+			values[index] = buf[i];
+			i = wrapIndex(i+1);
+		}
+	}
+
+	/**
+	 * A write intervened. Let the writer finish, then start a new read.
+	 * @return a new optimistic stamp.
+	 */
+	private long retry() {
+		long stamp = sequence.tryOptimisticRead();
+		while( stamp==0 ) {       // Write in progress
+			Thread.yield();
+			stamp = sequence.tryOptimisticRead();
+		}
+		return stamp;
+	}
+
+	/**
+	 * Keep an incrementing index with range of the buffer limits.
+	 * It also serves as a safe-guard to insure that any index is
+	 * within bounds.
+	 * @param i
+	 * @return an index into the history buffer, guaranteed to be within range
+	 */
+	private int wrapIndex(int i) {
+		int m = i % n;
+		if (m < 0) { // modulus can be negative
+			m += n;
+		}
+		return m;
+	}
+
+	/**
+	 * This is a debugging aid. We attempt to print a
+	 * meaningful rendering of the buffer.
+	 */
+	public String toString()
+	{
+		double[] values = getValues();
+		StringBuilder str = new StringBuilder(values.length);
+		for(double val:values) {
+			str.append(val);
+			str.append(",");
+		}
+		return str.toString();
+	}
+
+}
@@ -1,5 +1,5 @@
 /**
- *   (c) 2013  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  */
 package com.ils.common.collector;
 
@@ -7,8 +7,80 @@ package com.ils.common.collector;
 /**
  *  The data complete event marks the fact that all the tags
  *  that we're interested in have received a value( or we've timed out ) 
+ *
+ *  If the collector has an observation pool, the event carries a snapshot
+ *  of the completed observation. The snapshot is a pooled observation that
+ *  is shared by all the listeners. It is valid while the listener is being
+ *  informed. A listener that keeps it any longer must retain() it and then
+ *  release() it when done. A history buffer that shares the pool does this
+ *  itself. The snapshot is never modified while any reference remains.
+ *
+ *  An event is partial if the cycle was ended by its deadline before every
+ *  point had been updated. The missed reads of those points were incremented.
  */
 public class DataCompleteEvent   {
+	private final Observation snapshot;
+	private final int missed;
+	private final ObservationPool pool;
+	
 	public DataCompleteEvent() {
+		this(null);
+	}
+	
+	/**
+	 * @param obs snapshot of the completed observation
+	 */
+	public DataCompleteEvent(Observation obs) {
+		this(obs,0);
+	}
+	
+	/**
+	 * @param obs snapshot of the completed observation, may be null
+	 * @param missedCount the number of points not updated in the cycle
+	 */
+	public DataCompleteEvent(Observation obs,int missedCount) {
+		this(obs,missedCount,null);
+	}
+	
+	/**
+	 * @param obs snapshot of the completed observation, may be null
+	 * @param missedCount the number of points not updated in the cycle
+	 * @param p the pool from which the snapshot was taken, may be null
+	 */
+	public DataCompleteEvent(Observation obs,int missedCount,ObservationPool p) {
+		this.snapshot = obs;
+		this.missed = missedCount;
+		this.pool = p;
+	}
+	
+	/**
+	 * @return true if the cycle ended at its deadline, with points missing.
+	 */
+	public boolean isPartial() { return this.missed>0; }
+	/**
+	 * @return the number of points that were not updated in the cycle.
+	 */
+	public int getMissedCount() { return this.missed; }
+	
+	/**
+	 * @return a snapshot of the completed observation, else null if
+	 *         the collector does not publish snapshots.
+	 */
+	public Observation getSnapshot() { return this.snapshot; }
+	
+	/**
+	 * Keep the snapshot beyond the return from dataCollected(). Each call
+	 * must be balanced by a call to release(). There is no effect
+	 * if the snapshot is not pooled.
+	 */
+	public void retain() {
+		if( pool!=null && snapshot!=null ) pool.retain(snapshot);
+	}
+	
+	/**
+	 * Drop a reference to the snapshot taken by retain().
+	 */
+	public void release() {
+		if( pool!=null && snapshot!=null ) pool.release(snapshot);
 	}
 }
@@ -1,5 +1,5 @@
 /**
- *   (c) 2013  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  */
 package com.ils.common.collector;
 
@@ -16,6 +16,7 @@ import java.util.Date;
  *  the observation. index ranges from 0 to len -1;
  */
 public class DataPoint implements Cloneable  {
+	static final int INACTIVE = -1;
 	public int index;         // Position of this data point in the observation
 	public int badReads;      // Consecutive bad reads
 	public int missedReads;   // Consecutive read timeouts
@@ -24,6 +25,7 @@ public class DataPoint implements Cloneable  {
 	public Date timestamp;
 	public Object value;      // The value (data type varies)
 	public boolean updated;
+	volatile int cycle = INACTIVE;   // Collection cycle in which the point was last counted, maintained by the collector
 	
 	/**
 	 * Create a new data point. If the tag name is null,
@@ -49,7 +51,7 @@ public class DataPoint implements Cloneable  {
 	 *    a no-change in data value. In this case we increment badReads.  
 	 */
 	@Override
-	public DataPoint clone() {
+	public synchronized DataPoint clone() {
 		DataPoint clone = new DataPoint(index,tagPath);
 		clone.timestamp = (timestamp==null?null:new Date(timestamp.getTime()));
 		clone.isGood = isGood;
@@ -59,6 +61,27 @@ public class DataPoint implements Cloneable  {
 		return clone;
 	}
 	
+	/**
+	 * Make this data point a copy of another, re-using the timestamp.
+	 * The source is read under its lock, thus the copy is consistent
+	 * with respect to updates by a data collector.
+	 * @param source
+	 */
+	public void copyFrom(DataPoint source) {
+		synchronized(source) {
+			index = source.index;
+			tagPath = source.tagPath;
+			if( source.timestamp==null ) timestamp = null;
+			else if( timestamp==null || timestamp==source.timestamp ) timestamp = new Date(source.timestamp.getTime());
+			else timestamp.setTime(source.timestamp.getTime());
+			isGood = source.isGood;
+			value = source.value;            // Treat the value as if it were immutable
+			badReads = source.badReads;
+			missedReads = source.missedReads;
+			updated = source.updated;
+		}
+	}
+	
 	/**
 	 * This is a debugging aid.
 	 */
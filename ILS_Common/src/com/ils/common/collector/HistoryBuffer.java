@@ -0,0 +1,33 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.collector;
+
+
+/**
+ *  This is the common interface of the observation history buffers.
+ *  It allows a consumer to choose between the object-per-slot
+ *  CircularHistoryBuffer and the primitive ColumnarHistoryBuffer
+ *  without altering the code that queries the history.
+ */
+public interface HistoryBuffer   {
+	public void add(Observation obs);
+	public void clear();
+	public void clearHistory();
+	public Observation getCurrentObservation();
+	public int getObservationCount(long time);
+	public long getHistoryDuration();
+	public long getObservationInterval();
+	public Observation[] getHistory();
+	public Observation[] getHistory(long timeInterval);
+	public Observation[] getPastObservations(int count);
+	public Object getPastValue(int index,long time);
+	public Object getPriorValue(int index);
+	public int size();
+	/**
+	 * @param pool if not null, the buffer retains any observation that it keeps
+	 *        and releases each to the pool once it is discarded. The caller
+	 *        of add() remains responsible for its own reference.
+	 */
+	public void setObservationPool(ObservationPool pool);
+}
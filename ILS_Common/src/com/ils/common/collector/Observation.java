@@ -1,5 +1,5 @@
 /**
- *   (c) 2013  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  *  
  */
 package com.ils.common.collector;
@@ -19,6 +19,7 @@ import java.util.Date;
 public class Observation implements Cloneable  {
 	public Date timestamp;         // Latest date of the data points.
 	public DataPoint[] dataPoints; // Data points in this observation
+	int references = 0;            // Holders of a pooled observation, guarded by the pool
 	/**
 	 * 
 	 * @param ts - time-stamp applicable to all data points
@@ -53,6 +54,34 @@ public class Observation implements Cloneable  {
 		return obs;
 	}
 	
+	/**
+	 * Make this observation a copy of another, re-using the existing data points
+	 * and dates where possible. This is the means by which pooled observations
+	 * are filled.
+	 * @param source the observation to be copied
+	 */
+	public void copyFrom(Observation source) {
+		if( source.timestamp==null ) timestamp = null;
+		else if( timestamp==null || timestamp==source.timestamp ) timestamp = new Date(source.timestamp.getTime());
+		else timestamp.setTime(source.timestamp.getTime());
+		DataPoint[] from = source.dataPoints;
+		if( dataPoints==null || dataPoints.length!=from.length ) {
+			DataPoint[] points = new DataPoint[from.length];
+			if( dataPoints!=null ) System.arraycopy(dataPoints, 0, points, 0, Math.min(dataPoints.length,from.length));
+			dataPoints = points;
+		}
+		for(int index=0;index<from.length;index++) {
+			DataPoint point = from[index];
+			if( point==null ) {
+				dataPoints[index] = null;
+			}
+			else {
+				if( dataPoints[index]==null ) dataPoints[index] = new DataPoint(point.index,point.tagPath);
+				dataPoints[index].copyFrom(point);
+			}
+		}
+	}
+	
 	/**
 	 * This is a debugging aid. We attempt to print a 
 	 * meaningful rendering of the observation.
@@ -0,0 +1,123 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.collector;
+
+
+/**
+ *  An ObservationPool holds observations that are no longer in use, so that
+ *  they may be re-used as snapshots rather than allocating a new observation
+ *  (with its data points and dates) for every collection cycle.
+ *
+ *  A pooled observation is reference-counted. The caller of acquire() or
+ *  copyOf() holds the first reference. Any other holder that keeps the
+ *  observation calls retain(), and each holder calls release() once it is
+ *  done. The observation is returned to the pool when the last reference
+ *  is released. The data collector fills a snapshot, publishes it with the
+ *  data complete event and releases its reference once the listeners have
+ *  been informed. A history buffer that is given the pool retains the
+ *  observations added to it and releases each when it is evicted. Thus,
+ *  once the history is full, every cycle re-uses the observation just
+ *  evicted. A capacity of 2 or 3 (double or triple buffering) is sufficient
+ *  when the history is the only consumer.
+ *
+ *  CAUTION: A pooled observation is overwritten when it is re-used. An
+ *  observation obtained from a history buffer that uses a pool is valid only
+ *  until it is evicted. A consumer that retains it longer must clone it, or
+ *  retain it.
+ *
+ *  The pool is thread-safe.
+ */
+public class ObservationPool   {
+	public static final int DEFAULT_CAPACITY = 3;
+	private final Observation[] free;
+	private int count = 0;
+	private long created = 0;
+	private long reused = 0;
+
+	/**
+	 * Create a pool with the default capacity.
+	 */
+	public ObservationPool() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the maximum number of idle observations retained.
+	 *        Any released beyond this are left to the garbage collector.
+	 */
+	public ObservationPool(int capacity) {
+		if( capacity<1 ) capacity = 1;
+		this.free = new Observation[capacity];
+	}
+
+	/**
+	 * @return an idle observation, else a new, empty one. The contents of
+	 *         a re-used observation are those of its previous use. The
+	 *         caller holds its only reference.
+	 */
+	public synchronized Observation acquire() {
+		Observation obs = null;
+		if( count>0 ) {
+			obs = free[--count];
+			free[count] = null;
+			reused++;
+		}
+		else {
+			created++;
+			obs = new Observation(null,new DataPoint[0]);
+		}
+		obs.references = 1;
+		return obs;
+	}
+
+	/**
+	 * @param source the observation to be copied
+	 * @return a pooled observation holding a copy of the source.
+	 */
+	public Observation copyOf(Observation source) {
+		Observation obs = acquire();
+		obs.copyFrom(source);
+		return obs;
+	}
+
+	/**
+	 * Add a reference to an observation. An observation that was not taken
+	 * from the pool is adopted, that is the caller holds its only reference.
+	 * @param obs
+	 * @return the observation
+	 */
+	public synchronized Observation retain(Observation obs) {
+		if( obs!=null ) obs.references++;
+		return obs;
+	}
+
+	/**
+	 * Drop a reference to an observation. The caller must not reference it
+	 * afterwards. Once no references remain, the observation is idle and may
+	 * be re-used. Releasing an observation that is already idle has no effect.
+	 * @param obs
+	 */
+	public synchronized void release(Observation obs) {
+		if( obs==null ) return;
+		if( obs.references>1 ) {
+			obs.references--;
+			return;
+		}
+		obs.references = 0;
+		if( count==free.length ) return;
+		for(int i=0;i<count;i++) {
+			if( free[i]==obs ) return;
+		}
+		free[count++] = obs;
+	}
+
+	/** @return the maximum number of idle observations retained. */
+	public int getCapacity() { return free.length; }
+	/** @return the number of idle observations. */
+	public synchronized int getAvailable() { return count; }
+	/** @return the number of observations created because none was idle. */
+	public synchronized long getCreatedCount() { return created; }
+	/** @return the number of observations re-used. */
+	public synchronized long getReusedCount() { return reused; }
+}
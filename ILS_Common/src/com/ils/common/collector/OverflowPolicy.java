@@ -0,0 +1,32 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.collector;
+
+
+/**
+ * This enumeration class represents the handling of a data complete event
+ * that arrives when the queue of an asynchronous listener is full.
+ *  DROP_OLDEST - the oldest pending event is discarded.
+ *  COALESCE    - the newest pending event is replaced by the arrival, thus
+ *                the listener sees the latest, but not every intermediate, event.
+ *  BLOCK       - the collector waits for space. This delays data collection.
+ *                The collector is not locked while it waits.
+ */
+public enum OverflowPolicy {
+	DROP_OLDEST,
+	COALESCE,
+	BLOCK
+	;
+
+	/**
+	 * @return a comma-separated list of all policies in a single String.
+	 */
+	public static String names() {
+		StringBuffer names = new StringBuffer();
+		for (OverflowPolicy type : OverflowPolicy.values()) {
+			names.append(type.name()+", ");
+		}
+		return names.substring(0, names.length()-2);
+	}
+}
@@ -1,43 +1,81 @@
 /**
- *   (c) 2013  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  */
 package com.ils.common.collector;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
+import com.ils.common.watchdog.Clock;
+import com.ils.common.watchdog.HeapWatchdogQueue;
+import com.ils.common.watchdog.RecurrenceMode;
+import com.ils.common.watchdog.RecurringWatchdog;
+import com.ils.common.watchdog.SystemClock;
+import com.ils.common.watchdog.WatchdogExecutionMode;
+import com.ils.common.watchdog.WatchdogExecutors;
+import com.ils.common.watchdog.WatchdogTimer;
 import com.inductiveautomation.ignition.common.util.LogUtil;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
 
 /**
  *  This is a generic time-out timer for use with a classes that need to wait
  *  until an interval expires. On expiration the timer can be is automatically
- *  reset to count-down again for the next cycle. The call-back takes place in
- *  the same thread. The interval calculation is not altered by the computation
- *  time used within the call-back (unless it overwrites the trigger interval).
- *  
- *  Interested entities register as TimeoutObservers. 
+ *  reset to count-down again for the next cycle. The interval calculation is
+ *  not altered by the computation time used within the call-back. If the
+ *  call-back is still running when the next interval expires, that cycle is
+ *  skipped.
+ *
+ *  The timers do not have threads of their own. Each is a recurring watchdog
+ *  on a timing engine shared by all running timers on the same clock. The
+ *  engine is created when the first of them starts and is stopped, with its
+ *  thread pool, when the last of them stops. The call-backs are run by the
+ *  engine's thread pool, never by its timing thread. A reset cancels the
+ *  pending timeout; the next occurs one interval later.
+ *
+ *  The interval is measured on a Clock, by default the system clock. On any
+ *  other clock, the call-backs are run in turn by the engine's timing thread,
+ *  so that the sequence of events is reproducible. They are run with the
+ *  engine unlocked, thus a call-back may start, stop or reset a timer.
+ *
+ *  Interested entities register as TimeoutObservers.
  */
 public class TimeoutTimer implements Runnable   {
 	private final static String TAG = "TimeoutTimer: ";
+	private final static Map<Clock,Engine> engines = new HashMap<>();
 	private final LoggerEx log;
 	private final int timeout;    // ~ msecs
 	private final List<TimeoutObserver> observers;
-	private boolean stopped = true;
-	private Thread thread = null; 
+	private final Clock clock;
+	private WatchdogTimer engine = null;    // While running
+	private final RecurringWatchdog dog;
+	private volatile boolean stopped = true;
 
 	/**
 	 * Constructor: Creates a timeout timer.
 	 * @param timeout
 	 */
 	public TimeoutTimer(int timeout)  {
+		this(timeout,SystemClock.INSTANCE);
+	}
+
+	/**
+	 * Constructor: Creates a timeout timer that runs on the supplied clock.
+	 * @param timeout ~ msecs
+	 * @param clk time-base
+	 */
+	public TimeoutTimer(int timeout,Clock clk)  {
 		log = LogUtil.getLogger(getClass().getPackage().getName());
 		log.debug(TAG+"New timer with timout = "+timeout);
 		if (timeout < 1) {
 			throw new IllegalArgumentException("timeout must be greater than zero.");
 		}
 		this.timeout = timeout;
+		this.clock = clk;
 		this.observers = new CopyOnWriteArrayList<TimeoutObserver>();
+		this.dog = new RecurringWatchdog(TAG+timeout,this::run,timeout,RecurrenceMode.FIXED_RATE,clk);
 	}
 
 	public void addTimeoutObserver(final TimeoutObserver to) {
@@ -49,9 +87,9 @@ public class TimeoutTimer implements Runnable   {
 	}
 
 	/**
-	 * Inform the observers of the timeout. This involves 
-	 * complete processing of all the models. Run this in
-	 * the same thread.
+	 * Inform the observers of the timeout. This involves
+	 * complete processing of all the models. The observers
+	 * are called in turn.
 	 */
 	protected final void fireTimeoutOccured() {
 		log.debug(TAG+"TIMEOUT ");
@@ -67,52 +105,83 @@ public class TimeoutTimer implements Runnable   {
 
 	public synchronized void start() {
 		stopped = false;
-		thread = new Thread(this, "TimeoutTimer");
-		log.debug(String.format("%s START %d",TAG,thread.hashCode()));
-		thread.setDaemon(true);
-		thread.start();
+		log.debug(String.format("%s START %d",TAG,hashCode()));
+		if( engine==null ) engine = acquireEngine(clock);
+		engine.schedule(dog, timeout);
 	}
 
 	public synchronized void stop() {
 		log.debug(TAG+"STOPPED");
 		stopped = true;
-		if(thread!=null) {
-			thread.interrupt();
-			notifyAll();
+		if( engine!=null ) {
+			engine.removeWatchdog(dog);
+			releaseEngine(clock);
+			engine = null;
 		}
 	}
-	
+
+	/**
+	 * Skip the pending timeout. The count-down continues with the next cycle.
+	 */
 	public synchronized void reset() {
-		if(thread!=null) {
+		if( !stopped && engine!=null ) {
 			log.debug(TAG+"RESET");
-			thread.interrupt();
+			synchronized(engine) {     // The dog may not expire between the read and the re-schedule
+				engine.schedule(dog, dog.getExpiration()+timeout-clock.currentTime());
+			}
 		}
 	}
 
-	public synchronized void run() {
-		final long interval = timeout;
-		long now = System.currentTimeMillis();
-		long triggerTime = now + interval;
-		long waitTime = 0;
-
-		while( !stopped  ) {
-			try {
-				waitTime = triggerTime - now;
-				triggerTime += interval;
-				if( waitTime>0 ) {
-					log.debug(TAG+"WAIT for "+waitTime);
-					wait(waitTime);
-				}
-				if (!stopped) fireTimeoutOccured();
-			} 
-			// On an interrupt, simply reset the target time and don't fire
-			// This is the case where the count down did not complete.
-			catch (InterruptedException e) {}
-			catch( Exception ex ) {
-				log.error(TAG+" Exception during timeout processing ("+ex.getLocalizedMessage()+")",ex);  // Prints stack trace
-			}
-			now = System.currentTimeMillis();
+	/**
+	 * This is invoked by the timing engine at each expiration.
+	 */
+	public void run() {
+		if (!stopped) fireTimeoutOccured();
+	}
+
+	/**
+	 * Obtain the engine shared by all timers on the clock. It is created
+	 * on first use. The data collector deadlines share it also. Each call
+	 * must be balanced by a call to releaseEngine().
+	 * @return the engine for the clock
+	 */
+	static synchronized WatchdogTimer acquireEngine(Clock clk) {
+		Engine engine = engines.get(clk);
+		if( engine==null ) {
+			WatchdogExecutionMode mode = (clk==SystemClock.INSTANCE?WatchdogExecutionMode.WORK_STEALING:WatchdogExecutionMode.CALLER);
+			ExecutorService pool = WatchdogExecutors.create(mode,WatchdogTimer.getThreadPoolSize());
+			engine = new Engine(new WatchdogTimer("TimeoutTimer",new HeapWatchdogQueue(),pool,clk),pool);
+			engines.put(clk, engine);
+		}
+		engine.users++;
+		return engine.timer;
+	}
+
+	/**
+	 * The caller no longer uses the engine of the clock. Once it has no
+	 * users, the engine is stopped and discarded, thus neither it nor the
+	 * clock is retained.
+	 */
+	static synchronized void releaseEngine(Clock clk) {
+		Engine engine = engines.get(clk);
+		if( engine==null ) return;
+		engine.users--;
+		if( engine.users<=0 ) {
+			engines.remove(clk);
+			engine.timer.stop();
+			engine.pool.shutdown();
+		}
+	}
+
+	// A timing engine and the count of the timers that use it
+	private static class Engine {
+		private final WatchdogTimer timer;
+		private final ExecutorService pool;
+		private int users = 0;
+
+		Engine(WatchdogTimer t,ExecutorService p) {
+			this.timer = t;
+			this.pool = p;
 		}
-		log.debug(String.format("%s TERMINATING %d",TAG,Thread.currentThread().hashCode()));
 	}
 }
@@ -0,0 +1,99 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+
+/**
+ *  A clock that runs at a multiple of real time, for use in testing. When
+ *  the speedup changes, the clock continues from its current reading at the
+ *  new rate, and any waits in progress are woken so that they can be
+ *  re-computed. Expirations already held in clock time thus move to the new
+ *  scale without adjustment.
+ */
+public class AcceleratedClock implements Clock   {
+	private double speedup = 1.0;
+	private long realOrigin;          // Real time at the last change ~ nsecs
+	private double clockOrigin;       // Clock time at the last change ~ msecs
+	private double wallOrigin;        // Wall time at the last change ~ msecs
+	private final Set<Object> monitors = Collections.newSetFromMap(new WeakHashMap<>());
+
+	public AcceleratedClock() {
+		this.realOrigin = System.nanoTime();
+		this.clockOrigin = realOrigin/1000000;
+		this.wallOrigin = System.currentTimeMillis();
+	}
+
+	public synchronized double getSpeedup() { return this.speedup; }
+
+	/**
+	 * @param fact the ratio of clock time to real time. Values greater
+	 *        than one run the clock fast.
+	 */
+	public void setSpeedup(double fact) {
+		if( fact<=0.0 ) return;
+		List<Object> waiting;
+		synchronized(this) {
+			rebase();
+			this.speedup = fact;
+			waiting = new ArrayList<>(monitors);
+		}
+		for(Object monitor:waiting) {
+			synchronized(monitor) {
+				monitor.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @param wall the wall-clock time that corresponds to the current
+	 *        clock time ~ msecs since the start of the unix epoch
+	 */
+	public synchronized void setWallTime(long wall) {
+		rebase();
+		this.wallOrigin = wall;
+	}
+
+	@Override
+	public synchronized long currentTime() {
+		return (long)clockTime();
+	}
+
+	@Override
+	public synchronized long wallTime() {
+		return (long)(wallOrigin + clockTime()-clockOrigin);
+	}
+
+	/**
+	 * Wait for the real time that corresponds to the delay at the current speedup.
+	 */
+	@Override
+	public void await(Object monitor,long delay) throws InterruptedException {
+		double fact;
+		synchronized(this) {
+			monitors.add(monitor);
+			fact = speedup;
+		}
+		long real = (long)Math.ceil(delay/fact);
+		monitor.wait(real<1?1:real);
+	}
+
+	private double clockTime() {
+		return clockOrigin + (System.nanoTime()-realOrigin)*speedup/1000000.;
+	}
+
+	// Start a new segment at the current reading
+	private void rebase() {
+		long real = System.nanoTime();
+		double clock = clockOrigin + (real-realOrigin)*speedup/1000000.;
+		wallOrigin += clock-clockOrigin;
+		clockOrigin = clock;
+		realOrigin = real;
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+
+/**
+ *  A clock is the time-base of the watchdog and timeout timers. It supplies
+ *  two readings: a monotonic time used for expirations and a wall-clock
+ *  time used for timestamps. It also implements the timed wait, so that
+ *  a clock that runs faster or slower than real time may shorten or
+ *  lengthen it.
+ *
+ *  Implementations are SystemClock (real time), AcceleratedClock (real time
+ *  scaled by a speedup factor) and VirtualClock (discrete-event time that
+ *  advances only when told).
+ */
+public interface Clock   {
+	/**
+	 * @return the monotonic time ~ msecs. The origin is arbitrary.
+	 */
+	public long currentTime();
+	/**
+	 * @return the wall-clock time ~ msecs since the start of the unix epoch.
+	 */
+	public long wallTime();
+	/**
+	 * Wait on a monitor for up to the specified interval of clock time.
+	 * The caller must hold the monitor. As with Object.wait(), the wait
+	 * may end early, so the caller must re-check its condition.
+	 * @param monitor the object on which to wait
+	 * @param delay clock time ~ msecs, greater than zero
+	 * @throws InterruptedException
+	 */
+	public void await(Object monitor,long delay) throws InterruptedException;
+}
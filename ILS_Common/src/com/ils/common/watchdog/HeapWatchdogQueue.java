@@ -0,0 +1,145 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ *  This watchdog queue is a binary min-heap ordered by expiration. Dogs with
+ *  the same expiration are ordered by insertion. Each dog records its position
+ *  in the heap, so that insertion and removal are both O(log n). The ordering
+ *  is exact, thus this is the default queue of a WatchdogTimer.
+ */
+public class HeapWatchdogQueue implements WatchdogQueue   {
+	private static final int INITIAL_CAPACITY = 64;
+	private Watchdog[] heap;
+	private int size = 0;
+	private long sequence = 0;
+
+	public HeapWatchdogQueue()  {
+		this.heap = new Watchdog[INITIAL_CAPACITY];
+	}
+
+	@Override
+	public void add(Watchdog dog) {
+		if( size==heap.length ) heap = Arrays.copyOf(heap, 2*heap.length);
+		dog.queue = this;
+		dog.queuedExpiration = dog.getExpiration();
+		dog.queuedSequence = sequence++;
+		heap[size] = dog;
+		dog.queueIndex = size;
+		size++;
+		siftUp(dog.queueIndex);
+	}
+
+	@Override
+	public boolean remove(Watchdog dog) {
+		if( !contains(dog) ) return false;
+		removeAt(dog.queueIndex);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Watchdog dog) {
+		return dog!=null && dog.queue==this;
+	}
+
+	@Override
+	public void clear() {
+		for(int i=0;i<size;i++) {
+			release(heap[i]);
+			heap[i] = null;
+		}
+		size = 0;
+	}
+
+	@Override
+	public int size() { return this.size; }
+
+	@Override
+	public long getNextExpiration(long now) {
+		if( size==0 ) return Long.MAX_VALUE;
+		return heap[0].queuedExpiration;
+	}
+
+	@Override
+	public Watchdog pollExpired(long now) {
+		if( size==0 || heap[0].queuedExpiration>now ) return null;
+		Watchdog dog = heap[0];
+		removeAt(0);
+		return dog;
+	}
+
+	@Override
+	public Watchdog peek() {
+		return (size==0?null:heap[0]);
+	}
+
+	@Override
+	public List<Watchdog> getWatchdogs() {
+		List<Watchdog> list = new ArrayList<>(size);
+		for(int i=0;i<size;i++) {
+			list.add(heap[i]);
+		}
+		return list;
+	}
+
+	private void removeAt(int index) {
+		Watchdog dog = heap[index];
+		size--;
+		if( index!=size ) {
+			heap[index] = heap[size];
+			heap[index].queueIndex = index;
+			heap[size] = null;
+			siftDown(index);
+			siftUp(index);
+		}
+		else {
+			heap[size] = null;
+		}
+		release(dog);
+	}
+
+	private void siftUp(int index) {
+		Watchdog dog = heap[index];
+		while( index>0 ) {
+			int parent = (index-1)>>>1;
+			if( !earlier(dog,heap[parent]) ) break;
+			heap[index] = heap[parent];
+			heap[index].queueIndex = index;
+			index = parent;
+		}
+		heap[index] = dog;
+		dog.queueIndex = index;
+	}
+
+	private void siftDown(int index) {
+		Watchdog dog = heap[index];
+		int half = size>>>1;
+		while( index<half ) {
+			int child = 2*index+1;
+			int right = child+1;
+			if( right<size && earlier(heap[right],heap[child]) ) child = right;
+			if( !earlier(heap[child],dog) ) break;
+			heap[index] = heap[child];
+			heap[index].queueIndex = index;
+			index = child;
+		}
+		heap[index] = dog;
+		dog.queueIndex = index;
+	}
+
+	private boolean earlier(Watchdog a,Watchdog b) {
+		if( a.queuedExpiration!=b.queuedExpiration ) return a.queuedExpiration<b.queuedExpiration;
+		return a.queuedSequence<b.queuedSequence;
+	}
+
+	private void release(Watchdog dog) {
+		dog.queue = null;
+		dog.queueIndex = -1;
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ *  A thread-safe histogram with power-of-two buckets. Bucket 0 counts values
+ *  less than one, bucket i counts values in [2^(i-1),2^i). Recording is
+ *  lock-free and does not allocate. Percentiles are reported as the upper
+ *  bound of the bucket in which they fall, thus within a factor of two.
+ *  The histogram is unaware of units.
+ */
+public class LatencyHistogram   {
+	private static final int BUCKETS = 64;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+	public void record(long value) {
+		buckets.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+		long m = max.get();
+		while( value>m && !max.compareAndSet(m, value) ) {
+			m = max.get();
+		}
+	}
+
+	public long getCount() { return count.sum(); }
+	public long getSum()   { return sum.sum(); }
+	/**
+	 * @return the largest value recorded, 0 if there are none.
+	 */
+	public long getMax() {
+		long m = max.get();
+		return (m==Long.MIN_VALUE?0:m);
+	}
+	/**
+	 * @return the mean of the recorded values, NaN if there are none.
+	 */
+	public double getMean() {
+		long n = getCount();
+		return (n==0?Double.NaN:(double)getSum()/n);
+	}
+	/**
+	 * @param fraction the percentile as a fraction, e.g. 0.99
+	 * @return upper bound of the bucket holding the percentile, limited
+	 *         by the maximum. 0 if empty.
+	 */
+	public long getPercentile(double fraction) {
+		long[] counts = getBuckets();
+		long total = 0;
+		for(long c:counts) total += c;
+		if( total==0 ) return 0;
+		long rank = (long)Math.ceil(fraction*total);
+		if( rank<1 ) rank = 1;
+		long seen = 0;
+		for(int i=0;i<BUCKETS;i++) {
+			seen += counts[i];
+			if( seen>=rank ) return Math.min(upperBound(i),getMax());
+		}
+		return getMax();
+	}
+	/**
+	 * @return a copy of the bucket counts.
+	 */
+	public long[] getBuckets() {
+		long[] counts = new long[BUCKETS];
+		for(int i=0;i<BUCKETS;i++) {
+			counts[i] = buckets.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Values recorded concurrently with a reset may or may not survive.
+	 */
+	public void reset() {
+		for(int i=0;i<BUCKETS;i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(Long.MIN_VALUE);
+	}
+
+	/**
+	 * @return a summary suitable for scripting: count, mean, max, p50, p90, p99.
+	 */
+	public Map<String,Object> toMap() {
+		Map<String,Object> map = new HashMap<>();
+		map.put("count", getCount());
+		map.put("mean", getMean());
+		map.put("max", getMax());
+		map.put("p50", getPercentile(0.50));
+		map.put("p90", getPercentile(0.90));
+		map.put("p99", getPercentile(0.99));
+		return map;
+	}
+
+	private static int bucketOf(long value) {
+		if( value<1 ) return 0;
+		return BUCKETS - Long.numberOfLeadingZeros(value);   // 1 -> 1, 2..3 -> 2, ...
+	}
+
+	private static long upperBound(int bucket) {
+		if( bucket==0 ) return 0;
+		if( bucket>=BUCKETS-1 ) return Long.MAX_VALUE;
+		return (1L<<bucket)-1;
+	}
+}
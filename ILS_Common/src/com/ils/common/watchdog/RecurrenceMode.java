@@ -0,0 +1,30 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved. 
+ */
+package com.ils.common.watchdog;
+
+
+/**
+ * This enumeration class represents the ways in which a recurring watchdog
+ * is re-scheduled.
+ *  FIXED_RATE  - each expiration is one period after the previous scheduled
+ *                expiration, irrespective of when the observer ran. Periods
+ *                that are missed entirely are skipped.
+ *  FIXED_DELAY - each expiration is one period after the observer completes.
+ */
+public enum RecurrenceMode {
+	FIXED_RATE,
+	FIXED_DELAY
+	;
+           
+    /**
+     * @return a comma-separated list of all modes in a single String.
+     */
+     public static String names() {
+        StringBuffer names = new StringBuffer();
+         for (RecurrenceMode type : RecurrenceMode.values()) {
+            names.append(type.name()+", ");
+        }
+        return names.substring(0, names.length()-2);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ *  A recurring watchdog is re-scheduled by its timer after each expiration,
+ *  without intervention by the observer. Under FIXED_RATE, the next
+ *  expiration is computed from the previous scheduled expiration, so that
+ *  the schedule does not drift. Under FIXED_DELAY, the dog is re-scheduled
+ *  when its observer completes. An observer is never run concurrently with
+ *  itself; a fixed-rate expiration that arrives while the previous
+ *  evaluation is still running is skipped.
+ *
+ *  cancel() takes no lock. The dog is discarded when it next falls due, or
+ *  on completion of a running evaluation.
+ */
+public class RecurringWatchdog extends Watchdog  {
+	private final RecurrenceMode mode;
+	private volatile long period;
+	private volatile boolean cancelled = false;
+	private final AtomicBoolean running = new AtomicBoolean(false);
+	volatile WatchdogTimer owner = null;    // Set when scheduled
+
+	/**
+	 * Create a recurring watchdog on the system clock.
+	 * @param name
+	 * @param observer
+	 * @param period interval between expirations ~ msecs
+	 * @param mode re-scheduling strategy
+	 */
+	public RecurringWatchdog(String name,WatchdogObserver observer,long period,RecurrenceMode mode) {
+		this(name,observer,period,mode,SystemClock.INSTANCE);
+	}
+
+	/**
+	 * @param name
+	 * @param observer
+	 * @param period interval between expirations ~ msecs
+	 * @param mode re-scheduling strategy
+	 * @param clk time-base
+	 */
+	public RecurringWatchdog(String name,WatchdogObserver observer,long period,RecurrenceMode mode,Clock clk) {
+		super(name,observer,clk);
+		if( period<1 ) throw new IllegalArgumentException("period must be greater than zero.");
+		this.period = period;
+		this.mode = mode;
+	}
+
+	public RecurrenceMode getMode() { return this.mode; }
+	public long getPeriod() { return this.period; }
+	/**
+	 * A new period takes effect at the next re-scheduling.
+	 * @param p ~ msecs
+	 */
+	public void setPeriod(long p) { if( p>0 ) this.period = p; }
+	public boolean isCancelled() { return this.cancelled; }
+
+	/**
+	 * Stop the recurrence. This is O(1) and does not contend with the timer.
+	 */
+	public void cancel() {
+		cancelled = true;
+		setActive(false);
+	}
+
+	/**
+	 * Clear the cancellation, the dog is being scheduled afresh.
+	 */
+	void reinstate() { cancelled = false; }
+
+	/**
+	 * Move the expiration forward by whole periods until it is later than
+	 * the current time.
+	 * @param now ~ msecs
+	 */
+	void advanceExpiration(long now) {
+		long exp = getExpiration();
+		long p = period;
+		long missed = (now>=exp?(now-exp)/p:-1);
+		setExpiration(exp + (missed+1)*p);
+	}
+
+	/**
+	 * @return false if an evaluation is already in progress.
+	 */
+	boolean begin() { return running.compareAndSet(false, true); }
+
+	/**
+	 * The observer has completed. Under FIXED_DELAY, re-schedule.
+	 */
+	void finished() {
+		running.set(false);
+		WatchdogTimer timer = owner;
+		if( mode==RecurrenceMode.FIXED_DELAY && !cancelled && timer!=null ) {
+			timer.reschedule(this);
+		}
+	}
+}
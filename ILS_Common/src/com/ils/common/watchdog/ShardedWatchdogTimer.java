@@ -0,0 +1,191 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import com.inductiveautomation.ignition.common.util.LogUtil;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+/**
+ *  A sharded timer partitions its watchdogs across several independent
+ *  WatchdogTimers, each with its own queue, lock and timing thread. A dog
+ *  is assigned to a shard by its UUID, thus it always lands on the same
+ *  shard and all operations on a given dog remain ordered. Operations on
+ *  dogs in different shards proceed in parallel. The shards share a single
+ *  executor for the observers of expired dogs.
+ *
+ *  The interface mirrors that of the WatchdogTimer. Use this class when
+ *  many threads pet watchdogs concurrently.
+ */
+public class ShardedWatchdogTimer   {
+	protected final static String TAG = "ShardedWatchdogTimer";
+	protected final LoggerEx log;
+	protected final String name;
+	protected final ExecutorService threadPool;
+	protected final WatchdogTimer[] shards;
+
+	/**
+	 * Constructor: Create one shard per available processor, each ordered by a heap.
+	 * @param tname timer name
+	 */
+	public ShardedWatchdogTimer(String tname)  {
+		this(tname,Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor: Create the specified number of shards, each ordered by a heap.
+	 * @param tname timer name
+	 * @param shardCount number of shards, at least one
+	 */
+	public ShardedWatchdogTimer(String tname,int shardCount)  {
+		this(tname,shardCount,HeapWatchdogQueue::new);
+	}
+
+	/**
+	 * Constructor: Create the specified number of shards. The timing thread of each
+	 *              shard is started immediately.
+	 * @param tname timer name
+	 * @param shardCount number of shards, at least one
+	 * @param queueFactory supplies a new, empty queue for each shard
+	 */
+	public ShardedWatchdogTimer(String tname,int shardCount,Supplier<WatchdogQueue> queueFactory)  {
+		this(tname,shardCount,queueFactory,Executors.newFixedThreadPool(WatchdogTimer.THREAD_POOL_SIZE));
+	}
+
+	/**
+	 * Constructor: Create the specified number of shards, sharing the supplied executor.
+	 *              See WatchdogExecutors.
+	 * @param tname timer name
+	 * @param shardCount number of shards, at least one
+	 * @param queueFactory supplies a new, empty queue for each shard
+	 * @param pool executor for expiration tasks
+	 */
+	public ShardedWatchdogTimer(String tname,int shardCount,Supplier<WatchdogQueue> queueFactory,ExecutorService pool)  {
+		this(tname,shardCount,queueFactory,pool,SystemClock.INSTANCE);
+	}
+
+	/**
+	 * Constructor: Create the specified number of shards, sharing the supplied executor
+	 *              and clock.
+	 * @param tname timer name
+	 * @param shardCount number of shards, at least one
+	 * @param queueFactory supplies a new, empty queue for each shard
+	 * @param pool executor for expiration tasks
+	 * @param clk the time-base of every shard
+	 */
+	public ShardedWatchdogTimer(String tname,int shardCount,Supplier<WatchdogQueue> queueFactory,ExecutorService pool,Clock clk)  {
+		log = LogUtil.getLogger(getClass().getPackage().getName());
+		this.name = tname;
+		if( shardCount<1 ) shardCount = 1;
+		this.threadPool = pool;
+		this.shards = new WatchdogTimer[shardCount];
+		for(int i=0;i<shardCount;i++) {
+			shards[i] = new WatchdogTimer(tname+"-"+i,queueFactory.get(),threadPool,clk);
+		}
+		log.infof("%s.START %d shards",name,shardCount);
+	}
+
+	public String getName()    { return this.name; }
+	public int getShardCount() { return this.shards.length; }
+	public Clock getClock()    { return this.shards[0].getClock(); }
+	/**
+	 * @param index shard number
+	 * @return the shard. Its metrics describe that part of the kennel.
+	 */
+	public WatchdogTimer getShard(int index) { return this.shards[index]; }
+
+	/**
+	 * Add a new dog to the timer. It holds an absolute expiration time.
+	 * @param dog to be added
+	 */
+	public void addWatchdog(final Watchdog dog) {
+		if(dog==null)  return;   // Ignore
+		shardFor(dog).addWatchdog(dog);
+	}
+
+	/**
+	 * Start a recurring watchdog on its shard.
+	 * @param dog the recurring dog
+	 * @param initialDelay ~ msecs
+	 */
+	public void schedule(final RecurringWatchdog dog,long initialDelay) {
+		if(dog==null)  return;   // Ignore
+		shardFor(dog).schedule(dog,initialDelay);
+	}
+
+	/**
+	 * Remove the specified watchdog.
+	 * @param dog to be removed
+	 */
+	public void removeWatchdog(final Watchdog dog) {
+		if(dog==null)  return;   // Ignore
+		shardFor(dog).removeWatchdog(dog);
+	}
+
+	/**
+	 * "pet" a watchdog. If the watchdog is not currently held by the
+	 * timer, insert it.
+	 * @param dog the dog to update. It has already been set
+	 *        with the new expiration time.
+	 */
+	public void updateWatchdog(final Watchdog dog) {
+		if(dog==null)  return;   // Ignore
+		shardFor(dog).updateWatchdog(dog);
+	}
+
+	/**
+	 * @return the dog that is next to expire across all shards. This
+	 *         may be the IDLE dog of a shard.
+	 */
+	public Watchdog getTopDog() {
+		Watchdog result = null;
+		for(WatchdogTimer shard:shards) {
+			Watchdog dog = shard.getTopDog();
+			if( dog!=null && (result==null || dog.getExpiration()<result.getExpiration()) ) result = dog;
+		}
+		return result;
+	}
+
+	/**
+	 * Clear all shards of their dogs.
+	 */
+	public void reset() {
+		for(WatchdogTimer shard:shards) {
+			shard.reset();
+		}
+	}
+
+	/**
+	 * Restart the timing thread of each shard.
+	 */
+	public void start() {
+		for(WatchdogTimer shard:shards) {
+			shard.start();
+		}
+	}
+
+	/**
+	 * Stop the timing thread of each shard. The dogs are set inactive.
+	 */
+	public void stop() {
+		for(WatchdogTimer shard:shards) {
+			shard.stop();
+		}
+	}
+
+	/**
+	 * @return the shard that owns the dog. The assignment is fixed by the UUID.
+	 */
+	protected WatchdogTimer shardFor(Watchdog dog) {
+		UUID uuid = dog.getUUID();
+		long bits = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+		int hash = (int)(bits ^ (bits>>>32));
+		hash ^= (hash>>>16);
+		return shards[Math.floorMod(hash, shards.length)];
+	}
+}
@@ -0,0 +1,23 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+
+/**
+ *  The production clock. The monotonic time is derived from System.nanoTime().
+ */
+public class SystemClock implements Clock   {
+	public static final SystemClock INSTANCE = new SystemClock();
+
+	private SystemClock() {}
+
+	@Override
+	public long currentTime() { return System.nanoTime()/1000000; }
+	@Override
+	public long wallTime() { return System.currentTimeMillis(); }
+	@Override
+	public void await(Object monitor,long delay) throws InterruptedException {
+		monitor.wait(delay);
+	}
+}
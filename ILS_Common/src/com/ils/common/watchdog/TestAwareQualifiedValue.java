@@ -1,5 +1,5 @@
 /**
- *   (c) 2013-2015  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  *  
  */
 package com.ils.common.watchdog;
@@ -36,4 +36,25 @@ public class TestAwareQualifiedValue extends BasicQualifiedValue  {
 		super(value,q);
 		setTimestamp(new Date(timer.getTestTime()));
 	}
+	/**
+	 * Create a qualified value time-stamped with the wall-clock
+	 * time of the supplied clock.
+	 * @param clock
+	 * @param value
+	 */
+	public TestAwareQualifiedValue(Clock clock,Object value) {
+		super(value);
+		setTimestamp(new Date(clock.wallTime()));
+	}
+	/**
+	 * Create a qualified value time-stamped with the wall-clock
+	 * time of the supplied clock.
+	 * @param clock
+	 * @param value
+	 * @param q quality
+	 */
+	public TestAwareQualifiedValue(Clock clock,Object value,Quality q) {
+		super(value,q);
+		setTimestamp(new Date(clock.wallTime()));
+	}
 }
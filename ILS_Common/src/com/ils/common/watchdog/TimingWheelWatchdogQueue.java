@@ -0,0 +1,309 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ *  This watchdog queue is a hierarchical timing wheel. Time is divided into
+ *  ticks of a fixed length. The wheel has four levels of 64 slots each. Level
+ *  0 holds dogs due within the next 64 ticks, one slot per tick. Each higher
+ *  level covers 64 times the span of the level below. As time advances, the
+ *  contents of a slot at a higher level are "cascaded" down into the level
+ *  below. Dogs beyond the span of the wheel are parked in the top level and
+ *  re-placed when cascaded. Each slot is a doubly-linked list threaded through
+ *  the dogs themselves, so that insertion and removal are O(1).
+ *
+ *  A dog fires on the first tick boundary at or after its expiration, thus up to
+ *  one tick late. Dogs due within the same tick are not ordered. The wheel
+ *  is anchored to the timer's time-base on the first call that supplies the
+ *  current time. Dogs added before then are held aside.
+ */
+public class TimingWheelWatchdogQueue implements WatchdogQueue   {
+	public static final long DEFAULT_TICK = 10;     // ~ msecs
+	private static final int LEVELS = 4;
+	private static final int BITS = 6;
+	private static final int SLOTS = 1<<BITS;
+	private static final int MASK = SLOTS-1;
+	private static final long RANGE = 1L<<(LEVELS*BITS); // Span of the wheel ~ ticks
+	private static final int PENDING = LEVELS;      // Awaiting the wheel anchor
+	private static final int EXPIRED = LEVELS+1;    // Due, awaiting poll
+	private final long tick;
+	private final Watchdog[][] slots;
+	private final long[] occupied;                  // Bit map of non-empty slots by level
+	private Watchdog expiredTail = null;
+	private long currentTick = 0;                   // Next tick to be processed
+	private boolean anchored = false;
+	private int size = 0;
+
+	/**
+	 * Create a timing wheel with the default tick length.
+	 */
+	public TimingWheelWatchdogQueue()  {
+		this(DEFAULT_TICK);
+	}
+
+	/**
+	 * @param tickLength the resolution of the wheel ~ msecs
+	 */
+	public TimingWheelWatchdogQueue(long tickLength)  {
+		this.tick = (tickLength<1?1:tickLength);
+		this.slots = new Watchdog[LEVELS+2][SLOTS];
+		this.occupied = new long[LEVELS];
+	}
+
+	public long getTick() { return this.tick; }
+
+	@Override
+	public void add(Watchdog dog) {
+		dog.queue = this;
+		dog.queuedExpiration = dog.getExpiration();
+		size++;
+		if( anchored ) place(dog);
+		else link(dog,PENDING,0);
+	}
+
+	@Override
+	public boolean remove(Watchdog dog) {
+		if( !contains(dog) ) return false;
+		unlink(dog);
+		release(dog);
+		size--;
+		return true;
+	}
+
+	@Override
+	public boolean contains(Watchdog dog) {
+		return dog!=null && dog.queue==this;
+	}
+
+	@Override
+	public void clear() {
+		for(Watchdog dog:getWatchdogs()) {
+			release(dog);
+		}
+		for(int level=0;level<slots.length;level++) {
+			for(int slot=0;slot<SLOTS;slot++) {
+				slots[level][slot] = null;
+			}
+		}
+		for(int level=0;level<LEVELS;level++) {
+			occupied[level] = 0;
+		}
+		expiredTail = null;
+		size = 0;
+	}
+
+	@Override
+	public int size() { return this.size; }
+
+	@Override
+	public long getNextExpiration(long now) {
+		if( !anchored ) anchor(Math.floorDiv(now, tick));
+		if( slots[EXPIRED][0]!=null ) return now;
+		long next = nextTick();
+		if( next==Long.MAX_VALUE ) return next;
+		return next*tick;
+	}
+
+	@Override
+	public Watchdog pollExpired(long now) {
+		advance(now);
+		Watchdog dog = slots[EXPIRED][0];
+		if( dog!=null ) {
+			unlink(dog);
+			release(dog);
+			size--;
+		}
+		return dog;
+	}
+
+	/**
+	 * Advance the wheel once, then hand over the entire expired list.
+	 */
+	@Override
+	public int drainExpired(long now,Collection<Watchdog> sink) {
+		advance(now);
+		int count = 0;
+		Watchdog dog = slots[EXPIRED][0];
+		slots[EXPIRED][0] = null;
+		expiredTail = null;
+		while( dog!=null ) {
+			Watchdog next = dog.queueNext;
+			release(dog);
+			sink.add(dog);
+			count++;
+			dog = next;
+		}
+		size -= count;
+		return count;
+	}
+
+	/**
+	 * This requires a scan of the entire wheel.
+	 */
+	@Override
+	public Watchdog peek() {
+		Watchdog result = slots[EXPIRED][0];
+		if( result==null ) {
+			for(Watchdog dog:getWatchdogs()) {
+				if( result==null || dog.queuedExpiration<result.queuedExpiration ) result = dog;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<Watchdog> getWatchdogs() {
+		List<Watchdog> list = new ArrayList<>(size);
+		for(int level=0;level<slots.length;level++) {
+			for(int slot=0;slot<SLOTS;slot++) {
+				for(Watchdog dog=slots[level][slot];dog!=null;dog=dog.queueNext) {
+					list.add(dog);
+				}
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Fix the wheel position to the time-base and place any dogs
+	 * that were added beforehand.
+	 */
+	private void anchor(long target) {
+		currentTick = target;
+		anchored = true;
+		Watchdog dog = slots[PENDING][0];
+		while( dog!=null ) {
+			Watchdog next = dog.queueNext;
+			unlink(dog);
+			place(dog);
+			dog = next;
+		}
+	}
+
+	/**
+	 * Process every tick up to and including the current one. Ticks
+	 * where there is nothing to do are skipped.
+	 */
+	private void advance(long now) {
+		long target = Math.floorDiv(now, tick);
+		if( !anchored ) anchor(target);
+		while( currentTick<=target ) {
+			long t = nextTick();
+			if( t>target ) {
+				currentTick = target+1;
+				break;
+			}
+			currentTick = t;
+			for(int level=LEVELS-1;level>0;level--) {
+				if( (t & ((1L<<(BITS*level))-1))==0 ) cascade(level,(int)((t>>(BITS*level))&MASK));
+			}
+			expire((int)(t&MASK));
+			currentTick = t+1;
+		}
+	}
+
+	/**
+	 * @return the first tick, not earlier than the current, at which a
+	 *         level 0 slot is due or an occupied slot of a higher level
+	 *         is to be cascaded. Long.MAX_VALUE if the wheel is empty.
+	 */
+	private long nextTick() {
+		long result = Long.MAX_VALUE;
+		for(int level=0;level<LEVELS;level++) {
+			if( occupied[level]==0 ) continue;
+			int shift = BITS*level;
+			long first = -((-currentTick)>>shift);   // Ceiling of currentTick in units of the level
+			long rotated = Long.rotateRight(occupied[level], (int)(first&MASK));
+			long t = (first + Long.numberOfTrailingZeros(rotated))<<shift;
+			if( t<result ) result = t;
+		}
+		return result;
+	}
+
+	/**
+	 * Place a dog in the wheel relative to the current tick.
+	 */
+	private void place(Watchdog dog) {
+		long due = -Math.floorDiv(-dog.queuedExpiration, tick);  // Ceiling
+		if( due<currentTick ) due = currentTick;
+		long delta = due - currentTick;
+		if( delta>=RANGE ) {    // Park at the far end, re-placed on cascade
+			delta = RANGE-1;
+			due = currentTick+delta;
+		}
+		int level = 0;
+		while( delta>=(1L<<(BITS*(level+1))) ) level++;
+		int slot = (int)((due>>(BITS*level))&MASK);
+		link(dog,level,slot);
+	}
+
+	/**
+	 * Move the dogs in a slot down to a lower level (or into the expired list).
+	 */
+	private void cascade(int level,int slot) {
+		Watchdog dog = slots[level][slot];
+		slots[level][slot] = null;
+		occupied[level] &= ~(1L<<slot);
+		while( dog!=null ) {
+			Watchdog next = dog.queueNext;
+			place(dog);
+			dog = next;
+		}
+	}
+
+	/**
+	 * Move the dogs in a level 0 slot to the end of the expired list.
+	 */
+	private void expire(int slot) {
+		Watchdog dog = slots[0][slot];
+		slots[0][slot] = null;
+		occupied[0] &= ~(1L<<slot);
+		while( dog!=null ) {
+			Watchdog next = dog.queueNext;
+			dog.queueLevel = EXPIRED;
+			dog.queueIndex = 0;
+			dog.queueNext = null;
+			dog.queuePrevious = expiredTail;
+			if( expiredTail==null ) slots[EXPIRED][0] = dog;
+			else expiredTail.queueNext = dog;
+			expiredTail = dog;
+			dog = next;
+		}
+	}
+
+	private void link(Watchdog dog,int level,int slot) {
+		dog.queueLevel = level;
+		dog.queueIndex = slot;
+		dog.queuePrevious = null;
+		dog.queueNext = slots[level][slot];
+		if( dog.queueNext!=null ) dog.queueNext.queuePrevious = dog;
+		slots[level][slot] = dog;
+		if( level<LEVELS ) occupied[level] |= (1L<<slot);
+	}
+
+	private void unlink(Watchdog dog) {
+		int level = dog.queueLevel;
+		int slot = dog.queueIndex;
+		if( dog.queuePrevious!=null ) dog.queuePrevious.queueNext = dog.queueNext;
+		else slots[level][slot] = dog.queueNext;
+		if( dog.queueNext!=null ) dog.queueNext.queuePrevious = dog.queuePrevious;
+		else if( level==EXPIRED ) expiredTail = dog.queuePrevious;
+		if( level<LEVELS && slots[level][slot]==null ) occupied[level] &= ~(1L<<slot);
+		dog.queueNext = null;
+		dog.queuePrevious = null;
+	}
+
+	private void release(Watchdog dog) {
+		dog.queue = null;
+		dog.queueLevel = -1;
+		dog.queueIndex = -1;
+		dog.queueNext = null;
+		dog.queuePrevious = null;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ *  A discrete-event clock for simulation. Time stands still until it is
+ *  advanced, either explicitly or by stepping to the next time at which a
+ *  waiting timer is due. Thus hours of plant time may be run in seconds.
+ *
+ *  A timer that waits on this clock registers its wake time. step() advances
+ *  the clock to the earliest registered wake time, wakes that timer and
+ *  then gives it a moment of real time to do its work and wait again, so
+ *  that events are processed in order. Work that a timer hands to another
+ *  thread (e.g. watchdog observers run by a thread pool) is not tracked.
+ *  Where strict ordering matters, create the WatchdogTimer with
+ *  WatchdogExecutionMode.CALLER so that observers run on the timer thread.
+ */
+public class VirtualClock implements Clock   {
+	private static final long SETTLE_TIME = 1000;   // Real time allowed a woken timer ~ msecs
+	private final Map<Object,Long> waiters = new IdentityHashMap<>();   // Monitor -> wake time
+	private final Map<Object,Boolean> woken = new IdentityHashMap<>();  // Woken, not yet waiting again
+	private long time = 0;            // ~ msecs
+	private long wallOrigin;          // Wall time at clock time zero ~ msecs
+
+	/**
+	 * Create a clock that starts at zero, corresponding to the current wall-clock time.
+	 */
+	public VirtualClock() {
+		this(System.currentTimeMillis());
+	}
+
+	/**
+	 * @param wall wall-clock time at the start ~ msecs since the start of the unix epoch
+	 */
+	public VirtualClock(long wall) {
+		this.wallOrigin = wall;
+	}
+
+	@Override
+	public synchronized long currentTime() { return this.time; }
+	@Override
+	public synchronized long wallTime() { return wallOrigin+time; }
+
+	/**
+	 * Register the wake time, then wait until woken by an advance of the
+	 * clock or by a notification of the monitor.
+	 */
+	@Override
+	public void await(Object monitor,long delay) throws InterruptedException {
+		synchronized(this) {
+			waiters.put(monitor, time+delay);
+			woken.remove(monitor);
+			notifyAll();
+		}
+		try {
+			monitor.wait();
+		}
+		finally {
+			synchronized(this) {
+				waiters.remove(monitor);
+			}
+		}
+	}
+
+	/**
+	 * @return the earliest time at which a waiting timer is due,
+	 *         Long.MAX_VALUE if none are waiting.
+	 */
+	public synchronized long getNextEventTime() {
+		long next = Long.MAX_VALUE;
+		for(Long wake:waiters.values()) {
+			if( wake<next ) next = wake;
+		}
+		return next;
+	}
+
+	/**
+	 * Advance the clock by the specified interval, waking every timer that
+	 * falls due. Intermediate events are not processed in order, use
+	 * runFor() for that.
+	 * @param delta ~ msecs
+	 */
+	public void advance(long delta) {
+		if( delta>0 ) {
+			long target;
+			synchronized(this) {
+				target = time+delta;
+			}
+			moveTo(target);
+		}
+	}
+
+	/**
+	 * Advance to the next time at which a timer is due and let it run.
+	 * @return false if there are no waiting timers.
+	 * @throws InterruptedException
+	 */
+	public boolean step() throws InterruptedException {
+		long next = getNextEventTime();
+		if( next==Long.MAX_VALUE ) return false;
+		settle(moveTo(next));
+		return true;
+	}
+
+	/**
+	 * Process events in order until the clock has advanced by the specified
+	 * interval, or there are no more events.
+	 * @param duration ~ msecs
+	 * @throws InterruptedException
+	 */
+	public void runFor(long duration) throws InterruptedException {
+		long end;
+		synchronized(this) {
+			end = time+duration;
+		}
+		for(;;) {
+			long next = getNextEventTime();
+			if( next>end ) break;
+			settle(moveTo(next));
+		}
+		settle(moveTo(end));
+	}
+
+	/**
+	 * Set the clock forward, never backward, and wake the waiters that are due.
+	 * @return the monitors that were woken
+	 */
+	private List<Object> moveTo(long target) {
+		List<Object> due = new ArrayList<>();
+		synchronized(this) {
+			if( target>time ) time = target;
+			for(Map.Entry<Object,Long> entry:waiters.entrySet()) {
+				if( entry.getValue()<=time ) {
+					due.add(entry.getKey());
+					woken.put(entry.getKey(), Boolean.TRUE);
+				}
+			}
+			for(Object monitor:due) {
+				waiters.remove(monitor);
+			}
+		}
+		for(Object monitor:due) {
+			synchronized(monitor) {
+				monitor.notifyAll();
+			}
+		}
+		return due;
+	}
+
+	/**
+	 * Wait, in real time, for the woken timers to wait again.
+	 */
+	private synchronized void settle(List<Object> monitors) throws InterruptedException {
+		long deadline = System.nanoTime()/1000000 + SETTLE_TIME;
+		for(Object monitor:monitors) {
+			for(;;) {
+				if( !woken.containsKey(monitor) ) break;
+				long remaining = deadline - System.nanoTime()/1000000;
+				if( remaining<=0 ) break;
+				wait(remaining);
+			}
+			woken.remove(monitor);
+		}
+	}
+}
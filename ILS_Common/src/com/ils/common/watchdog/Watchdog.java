@@ -1,5 +1,5 @@
 /**
- *   (c) 2013  ILS Automation. All rights reserved.
+ *   (c) 2013-2025  ILS Automation. All rights reserved.
  *  
  */
 package com.ils.common.watchdog;
@@ -15,8 +15,18 @@ public class Watchdog  {
 	private final String name;
 	private final UUID uuid;
 	private final WatchdogObserver observer;
+	private Clock clock = SystemClock.INSTANCE;
 	private long expiration = 0;
 	private boolean active = false;
+	// Bookkeeping for the WatchdogQueue that holds this dog. These
+	// fields are managed entirely by the queue implementations.
+	WatchdogQueue queue = null;     // The queue that holds the dog, if any
+	long queuedExpiration = 0;      // Expiration when queued ~ msecs
+	long queuedSequence = 0;        // Order of insertion, breaks ties
+	int queueIndex = -1;            // Heap position or wheel slot
+	int queueLevel = -1;            // Wheel level
+	Watchdog queueNext = null;      // Wheel slot list
+	Watchdog queuePrevious = null;
 
 	/**
 	 * Create a watch dog task. 
@@ -29,6 +39,17 @@ public class Watchdog  {
 		this.active = false;
 	}
 	
+	/**
+	 * Create a watch dog task whose delays are measured on the specified clock.
+	 * @param name
+	 * @param observer
+	 * @param clk the time-base of the timer that will hold this dog
+	 */
+	public Watchdog(String name,WatchdogObserver observer,Clock clk) {
+		this(name,observer);
+		if( clk!=null ) this.clock = clk;
+	}
+	
 	/**
 	 * The active flag is managed entirely by the WatchdogTimer
 	 * @return true if the dog is in the timer's input queue.
@@ -41,7 +62,7 @@ public class Watchdog  {
 	
 	/**
 	 * The expiration is the time that this watchdog will expire
-	 * relative to the run-time of the virtual machine.
+	 * on the time-base of its clock.
 	 * @return watchdog expiration time ~ msecs.
 	 */
 	public long getExpiration() { return expiration;}
@@ -55,7 +76,7 @@ public class Watchdog  {
 	 * @param time, e.g. now is System.nanoTime()/1000000
 	 */
 	public void scaleExpiration(double fact) { 
-		long now = System.nanoTime()/1000000;
+		long now = clock.currentTime();
 		double deltatime =  expiration - now;
 		expiration = now + (long)(deltatime*fact);
 	}
@@ -66,7 +87,7 @@ public class Watchdog  {
 	 * @param delay ~ msecs
 	 */
 	public void setDelay(long delay) {
-		long now = System.nanoTime()/1000000;
+		long now = clock.currentTime();
 		this.expiration = delay + now; 
 	}
 	/**
@@ -79,8 +100,26 @@ public class Watchdog  {
 		setDelay((long)(delay*1000)); 
  
 	}
+	/**
+	 * @param exp absolute expiration on the dog's clock ~ msecs
+	 */
+	void setExpiration(long exp) { this.expiration = exp; }
 	public void decrementExpiration(long delta) { this.expiration = expiration-delta; if( expiration<0) expiration=0;}
 	public UUID getUUID() { return uuid; }
+	public WatchdogObserver getObserver() { return observer; }
+	public Clock getClock() { return clock; }
+	/**
+	 * Move the dog to a different time-base. The time remaining until
+	 * expiration is preserved. A timer calls this when the dog is inserted,
+	 * so that dogs created on the system clock run on the timer's clock.
+	 * @param clk the new clock
+	 */
+	public void setClock(Clock clk) {
+		if( clk==null || clk==clock ) return;
+		long remaining = expiration - clock.currentTime();
+		this.clock = clk;
+		this.expiration = clk.currentTime() + remaining;
+	}
 	
 	/**
 	 * Watchdog has expired, evaluate the observer. 
@@ -109,6 +148,6 @@ public class Watchdog  {
 	
 	@Override
 	public String toString() {
-		return String.format("Watchdog: %s expires in %d ms",name,getExpiration()-System.nanoTime()/1000000);
+		return String.format("Watchdog: %s expires in %d ms",name,getExpiration()-clock.currentTime());
 	}
 }
@@ -0,0 +1,36 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved. 
+ */
+package com.ils.common.watchdog;
+
+
+/**
+ * This enumeration class represents the strategies available for running
+ * the observers of expired watchdogs.
+ *  FIXED_POOL     - a fixed number of platform threads (the original behavior)
+ *  WORK_STEALING  - a bounded work-stealing pool. Idle threads take tasks
+ *                   queued behind a slow observer.
+ *  VIRTUAL_THREAD - a new virtual thread per task. Requires JDK 21 or later,
+ *                   otherwise the fixed pool is used.
+ *  CALLER         - the timer thread itself, once it has released the timer's
+ *                   lock. Intended for simulation with a VirtualClock, where
+ *                   time must not advance while an observer runs.
+ */
+public enum WatchdogExecutionMode {
+	FIXED_POOL,
+	WORK_STEALING,
+	VIRTUAL_THREAD,
+	CALLER
+	;
+           
+    /**
+     * @return a comma-separated list of all modes in a single String.
+     */
+     public static String names() {
+        StringBuffer names = new StringBuffer();
+         for (WatchdogExecutionMode type : WatchdogExecutionMode.values()) {
+            names.append(type.name()+", ");
+        }
+        return names.substring(0, names.length()-2);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import com.inductiveautomation.ignition.common.util.LogUtil;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+/**
+ *  Create executors for the evaluation of expired watchdogs. The library
+ *  is compiled for Java 8, so virtual threads are obtained by reflection.
+ *  Where they are unavailable, the fixed pool is substituted.
+ */
+public class WatchdogExecutors   {
+	private final static String TAG = "WatchdogExecutors";
+	private final static String VIRTUAL_FACTORY = "newVirtualThreadPerTaskExecutor";
+	private final static LoggerEx log = LogUtil.getLogger(WatchdogExecutors.class.getPackage().getName());
+	private static volatile Method virtualFactory = null;
+	private static volatile boolean virtualChecked = false;
+
+	private WatchdogExecutors() {}
+
+	/**
+	 * @param mode the execution strategy
+	 * @param parallelism the number of threads of a fixed or work-stealing pool.
+	 *        Virtual threads are not limited.
+	 * @return a new executor. The caller is responsible for its shutdown.
+	 */
+	public static ExecutorService create(WatchdogExecutionMode mode,int parallelism) {
+		if( parallelism<1 ) parallelism = 1;
+		switch(mode) {
+			case VIRTUAL_THREAD:
+				ExecutorService executor = newVirtualThreadExecutor();
+				if( executor!=null ) return executor;
+				log.warnf("%s.create: Virtual threads are not supported by this JVM, using a fixed pool",TAG);
+				return Executors.newFixedThreadPool(parallelism);
+			case WORK_STEALING:
+				return new ForkJoinPool(parallelism,ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+						(thread,ex)->log.errorf("%s: Exception in %s (%s)",TAG,thread.getName(),ex.getLocalizedMessage()),
+						true);     // FIFO for tasks that are never joined
+			case CALLER:
+				return new CallerExecutor();
+			case FIXED_POOL:
+			default:
+				return Executors.newFixedThreadPool(parallelism);
+		}
+	}
+
+	/**
+	 * @return true if this JVM provides virtual threads.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return virtualFactory()!=null;
+	}
+
+	/**
+	 * @return a virtual-thread-per-task executor, null if unsupported.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		Method method = virtualFactory();
+		if( method==null ) return null;
+		try {
+			return (ExecutorService)method.invoke(null);
+		}
+		catch(ReflectiveOperationException roe) {
+			log.warnf("%s.newVirtualThreadExecutor: Failed to create executor (%s)",TAG,roe.getLocalizedMessage());
+			return null;
+		}
+	}
+
+	private static Method virtualFactory() {
+		if( !virtualChecked ) {
+			try {
+				virtualFactory = Executors.class.getMethod(VIRTUAL_FACTORY);
+			}
+			catch(NoSuchMethodException nsme) {
+				virtualFactory = null;
+			}
+			virtualChecked = true;
+		}
+		return virtualFactory;
+	}
+
+	/**
+	 * @return true if the executor runs each task in the submitting thread.
+	 *         The timer then defers its tasks until it is unlocked.
+	 */
+	static boolean runsInCaller(ExecutorService executor) {
+		return executor instanceof CallerExecutor;
+	}
+
+	/**
+	 * Run each task immediately in the thread that submits it.
+	 */
+	private static class CallerExecutor extends AbstractExecutorService {
+		private volatile boolean shutdown = false;
+
+		@Override
+		public void execute(Runnable command) { command.run(); }
+		@Override
+		public void shutdown() { shutdown = true; }
+		@Override
+		public List<Runnable> shutdownNow() {
+			shutdown = true;
+			return Collections.emptyList();
+		}
+		@Override
+		public boolean isShutdown() { return shutdown; }
+		@Override
+		public boolean isTerminated() { return shutdown; }
+		@Override
+		public boolean awaitTermination(long timeout,TimeUnit unit) { return shutdown; }
+	}
+}
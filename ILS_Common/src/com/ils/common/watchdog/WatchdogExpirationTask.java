@@ -1,24 +1,110 @@
 /**
- *   (c) 2013  ILS Automation. All rights reserved. 
+ *   (c) 2013-2025  ILS Automation. All rights reserved. 
  */
 package com.ils.common.watchdog;
 
+import java.util.List;
+
+import com.inductiveautomation.ignition.common.util.LogUtil;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
 
 /**
  * Call the expiration method on the dog's observer. We do this in a separate thread.
+ * A task may carry a batch of dogs. These are expired in order. A failure in
+ * one observer does not prevent evaluation of the rest. An exception thrown
+ * by an observer is logged, it does not escape the task. Thus a task
+ * run in the timer's own thread cannot disrupt the timer.
  */
 public class WatchdogExpirationTask implements Runnable{
+	private final static String TAG = "WatchdogExpirationTask";
 	private final Watchdog dog;
+	private final List<Watchdog> batch;
+	private final WatchdogTimerMetrics metrics;
 	/**
 	 * Constructor.
 	 * 
 	 * @param dog the watchdog to trigger
 	 */
 	public WatchdogExpirationTask(Watchdog dog)  {	
+		this(dog,null);
+	}
+	/**
+	 * Constructor.
+	 * 
+	 * @param dog the watchdog to trigger
+	 * @param stats receives the evaluation time, may be null
+	 */
+	public WatchdogExpirationTask(Watchdog dog,WatchdogTimerMetrics stats)  {	
 		this.dog = dog;
+		this.batch = null;
+		this.metrics = stats;
+	}
+	/**
+	 * Constructor.
+	 * 
+	 * @param dogs the watchdogs to trigger, in order
+	 */
+	public WatchdogExpirationTask(List<Watchdog> dogs)  {	
+		this(dogs,null);
+	}
+	/**
+	 * Constructor.
+	 * 
+	 * @param dogs the watchdogs to trigger, in order
+	 * @param stats receives the evaluation times, may be null
+	 */
+	public WatchdogExpirationTask(List<Watchdog> dogs,WatchdogTimerMetrics stats)  {	
+		this.dog = null;
+		this.batch = dogs;
+		this.metrics = stats;
 	}
 	
 	public void run()   { 
-		dog.expire();
+		if( batch==null ) {
+			safeExpire(dog);
+			return;
+		}
+		for(Watchdog wd:batch) {
+			safeExpire(wd);
+		}
+	}
+
+	/**
+	 * The task will not be run, its executor has refused it. Any recurring
+	 * dogs are released as if their evaluation had completed.
+	 */
+	void abandon() {
+		if( batch==null ) release(dog);
+		else {
+			for(Watchdog wd:batch) {
+				release(wd);
+			}
+		}
+	}
+
+	private void safeExpire(Watchdog wd) {
+		try {
+			expire(wd);
+		}
+		catch(RuntimeException rte) {
+			LoggerEx log = LogUtil.getLogger(getClass().getPackage().getName());
+			log.errorf("%s.run: Exception evaluating %s (%s)",TAG,wd.toString(),rte.getLocalizedMessage());
+		}
+	}
+
+	private void release(Watchdog wd) {
+		if( wd instanceof RecurringWatchdog ) ((RecurringWatchdog)wd).finished();
+	}
+
+	private void expire(Watchdog wd) {
+		long start = System.nanoTime();
+		try {
+			wd.expire();
+		}
+		finally {
+			if( metrics!=null ) metrics.recordEvaluation(wd.getObserver(),System.nanoTime()-start);
+			if( wd instanceof RecurringWatchdog ) ((RecurringWatchdog)wd).finished();
+		}
 	}
 }
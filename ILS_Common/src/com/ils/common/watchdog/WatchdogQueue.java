@@ -0,0 +1,73 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ *  A watchdog queue is the scheduling engine of a WatchdogTimer. It holds
+ *  the dogs in order of expiration. The timer serializes all access, so
+ *  implementations need not be thread-safe. A dog may be held by only one
+ *  queue at a time. The expiration of a dog is captured when it is added.
+ *  Changing the expiration of a queued dog has no effect until the dog is
+ *  removed and added again.
+ *
+ *  Times are in msecs on the timer's time-base.
+ */
+public interface WatchdogQueue   {
+	/**
+	 * Add a dog that is not already in the queue.
+	 * @param dog
+	 */
+	public void add(Watchdog dog);
+	/**
+	 * @param dog
+	 * @return true if the dog was in the queue and has been removed.
+	 */
+	public boolean remove(Watchdog dog);
+	public boolean contains(Watchdog dog);
+	public void clear();
+	public int size();
+	/**
+	 * @param now the current time
+	 * @return the time at which the next dog is due, Long.MAX_VALUE if the
+	 *         queue is empty. The value may be earlier than the actual expiration,
+	 *         but never later.
+	 */
+	public long getNextExpiration(long now);
+	/**
+	 * @param now the current time
+	 * @return a dog whose expiration is not later than the current time,
+	 *         after removing it from the queue. Null if there are none.
+	 */
+	public Watchdog pollExpired(long now);
+	/**
+	 * Remove every dog whose expiration is not later than the current time.
+	 * @param now the current time
+	 * @param sink collection to receive the dogs, earliest first within
+	 *        the resolution of the queue
+	 * @return the number of dogs removed
+	 */
+	public default int drainExpired(long now,Collection<Watchdog> sink) {
+		int count = 0;
+		Watchdog dog = pollExpired(now);
+		while( dog!=null ) {
+			sink.add(dog);
+			count++;
+			dog = pollExpired(now);
+		}
+		return count;
+	}
+	/**
+	 * @return the dog with the earliest expiration, without removing it.
+	 *         Null if the queue is empty.
+	 */
+	public Watchdog peek();
+	/**
+	 * @return a list of all the dogs in the queue, in no particular order.
+	 */
+	public List<Watchdog> getWatchdogs();
+}
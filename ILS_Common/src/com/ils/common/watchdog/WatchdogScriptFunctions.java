@@ -0,0 +1,84 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ *  Make the metrics of watchdog timers available to Python scripts. A module
+ *  hook registers its timers on startup. Scripts then access them by name:
+ *     from com.ils.common.watchdog import WatchdogScriptFunctions
+ *     metrics = WatchdogScriptFunctions.getMetrics("MyTimer")
+ *     print metrics["lateness"]["p99"]
+ */
+public class WatchdogScriptFunctions   {
+	private static final Map<String,WatchdogTimer> timers = new ConcurrentHashMap<>();
+
+	/**
+	 * Register a timer under its name. Timers created with the default
+	 * constructor share a name, thus if the name is already registered to a
+	 * different timer, a suffix "#2", "#3", ... is appended to make it unique.
+	 * Registering a timer again has no effect.
+	 * @return the name under which the timer is registered, null if none.
+	 */
+	public static synchronized String register(WatchdogTimer timer) {
+		if( timer==null ) return null;
+		for(Map.Entry<String,WatchdogTimer> entry:timers.entrySet()) {
+			if( entry.getValue()==timer ) return entry.getKey();
+		}
+		String name = timer.getName();
+		int suffix = 1;
+		while( timers.putIfAbsent(name, timer)!=null ) {
+			suffix++;
+			name = timer.getName()+"#"+suffix;
+		}
+		return name;
+	}
+	/**
+	 * Register each shard of a sharded timer under the shard's name.
+	 */
+	public static void register(ShardedWatchdogTimer timer) {
+		if( timer==null ) return;
+		for(int i=0;i<timer.getShardCount();i++) {
+			register(timer.getShard(i));
+		}
+	}
+	public static void unregister(String name) {
+		timers.remove(name);
+	}
+	/**
+	 * Remove a timer, whatever the name under which it was registered.
+	 */
+	public static synchronized void unregister(WatchdogTimer timer) {
+		timers.values().removeIf(registered -> registered==timer);
+	}
+	/**
+	 * @return the names of the registered timers, sorted.
+	 */
+	public static List<String> getTimerNames() {
+		List<String> names = new ArrayList<>(timers.keySet());
+		Collections.sort(names);
+		return names;
+	}
+	/**
+	 * @return the metrics of the named timer as a dictionary, null if
+	 *         there is no such timer. See WatchdogTimerMetrics.toMap().
+	 */
+	public static Map<String,Object> getMetrics(String name) {
+		WatchdogTimer timer = timers.get(name);
+		return (timer==null?null:timer.getMetrics().toMap());
+	}
+	/**
+	 * Restart the counters of the named timer.
+	 */
+	public static void resetMetrics(String name) {
+		WatchdogTimer timer = timers.get(name);
+		if( timer!=null ) timer.getMetrics().reset();
+	}
+}
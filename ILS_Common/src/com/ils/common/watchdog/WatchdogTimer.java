@@ -3,9 +3,15 @@
  */
 package com.ils.common.watchdog;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import com.inductiveautomation.ignition.common.util.LogUtil;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
@@ -16,34 +22,70 @@ import com.inductiveautomation.ignition.common.util.LoggerEx;
  *  perhaps indefinitely. Once the petting stops, the dog's "evaluate"
  *  method is invoked. There is always, at least one dog present in
  *  the list, the IDLE dog.
- *  
+ *
+ *  The ordering of the dogs is delegated to a WatchdogQueue. By default
+ *  this is a binary heap (HeapWatchdogQueue) with O(log n) insertion and
+ *  removal. For very large numbers of dogs, a hierarchical timing wheel
+ *  (TimingWheelWatchdogQueue) offers O(1) insertion and removal at the cost
+ *  of a tick's resolution. The queue is selected when the timer is created.
+ *
+ *  All dogs that are due are drained from the queue in a single pass. By
+ *  default each is evaluated in its own task. Optionally, several dogs may
+ *  share a task, or the dogs of each observer may be grouped into a single
+ *  task. A coalescing window delays the timer after the first dog becomes
+ *  due, so that dogs expiring shortly afterwards are dispatched with it.
+ *  Dogs are never evaluated early.
+ *
+ *  By default, observers are run by a fixed pool of THREAD_POOL_SIZE threads.
+ *  Observers that block (tag reads, database queries) may be better served by
+ *  a work-stealing pool or, on JDK 21+, a virtual thread per expiration.
+ *  See WatchdogExecutionMode.
+ *
+ *  A RecurringWatchdog is re-scheduled by the timer itself after each
+ *  expiration. See schedule().
+ *
+ *  Time is measured on a Clock, by default the system clock. Dogs are moved
+ *  to the timer's clock as they are inserted. A VirtualClock allows a
+ *  simulation to run as fast as events can be processed.
+ *
+ *  Counts, rates, firing lateness and observer execution times are
+ *  available from getMetrics().
+ *
  *  This is the production version of the timer. It does not allow
  *  for alteration of the time-scale.
- *  
- *  Interested entities register as TimeoutObservers. 
+ *
+ *  Interested entities register as TimeoutObservers.
  */
 public class WatchdogTimer implements Runnable   {
 	protected final static String TAG = "WatchdogTimer";
 	protected final static int IDLE_DELAY = 60000;    // One minute
 	protected static int THREAD_POOL_SIZE = 20;       // Evaluate threads
 	protected final LoggerEx log;
-	protected final LinkedList<Watchdog> dogs;
+	protected final WatchdogQueue dogs;
 	protected boolean stopped = true;
 	protected final ExecutorService threadPool;
 	protected Thread watchdogThread = null;
 	protected final Watchdog idleDog;
+	protected final WatchdogTimerMetrics metrics;
+	protected final Clock clock;
 	protected long currentTime = 0;
+	protected long wakeTime = Long.MAX_VALUE;         // Time the timer thread is waiting for
 	protected String name = TAG;
+	protected volatile long coalescingWindow = 0;     // ~ msecs
+	protected volatile int batchSize = 1;             // Dogs per expiration task
+	protected volatile boolean groupByObserver = false;
+	private final List<Watchdog> expired = new ArrayList<>();
+	private final boolean inline;                      // The executor runs tasks in the timer thread
+	private final List<WatchdogExpirationTask> deferred = new ArrayList<>();
 
 	/**
 	 * Constructor: This version of the constructor supplies a name.
 	 * @param timer name
 	 */
 	public WatchdogTimer(String tname)  {
-		this();
-		this.name = tname;
+		this(tname,new HeapWatchdogQueue());
 	}
-	
+
 	/**
 	 * Constructor: Creates a timeout timer. The timer thread is started and
 	 *              runs continuously until a stop is issued. If no other
@@ -52,12 +94,63 @@ public class WatchdogTimer implements Runnable   {
 	 *              sorted accordingly.
 	 */
 	public WatchdogTimer()  {
+		this(TAG,new HeapWatchdogQueue());
+	}
+
+	/**
+	 * Constructor: This version of the constructor supplies a name and
+	 *              the queue that orders the dogs.
+	 * @param tname timer name
+	 * @param queue an empty queue, dedicated to this timer
+	 */
+	public WatchdogTimer(String tname,WatchdogQueue queue)  {
+		this(tname,queue,Executors.newFixedThreadPool(THREAD_POOL_SIZE));
+	}
+
+	/**
+	 * Constructor: This version of the constructor selects the strategy used
+	 *              to run the observers of expired dogs.
+	 * @param tname timer name
+	 * @param queue an empty queue, dedicated to this timer
+	 * @param mode execution strategy. The pool size is THREAD_POOL_SIZE.
+	 */
+	public WatchdogTimer(String tname,WatchdogQueue queue,WatchdogExecutionMode mode)  {
+		this(tname,queue,WatchdogExecutors.create(mode,THREAD_POOL_SIZE));
+	}
+
+	/**
+	 * Constructor: This version of the constructor supplies the executor
+	 *              that runs the observers of expired dogs. The executor
+	 *              may be shared with other timers. It is not shut down
+	 *              when the timer is stopped.
+	 * @param tname timer name
+	 * @param queue an empty queue, dedicated to this timer
+	 * @param pool executor for expiration tasks
+	 */
+	public WatchdogTimer(String tname,WatchdogQueue queue,ExecutorService pool)  {
+		this(tname,queue,pool,SystemClock.INSTANCE);
+	}
+
+	/**
+	 * Constructor: This version of the constructor supplies the time-base
+	 *              in addition to the executor. Dogs are moved to this clock
+	 *              when they are inserted.
+	 * @param tname timer name
+	 * @param queue an empty queue, dedicated to this timer
+	 * @param pool executor for expiration tasks
+	 * @param clk the time-base of the timer
+	 */
+	public WatchdogTimer(String tname,WatchdogQueue queue,ExecutorService pool,Clock clk)  {
 		log = LogUtil.getLogger(getClass().getPackage().getName());
-		this.threadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
-		this.idleDog = new Watchdog("IDLE",null);
+		this.name = tname;
+		this.threadPool = pool;
+		this.inline = WatchdogExecutors.runsInCaller(pool);
+		this.clock = clk;
+		this.metrics = new WatchdogTimerMetrics(this::getQueueDepth,this::getExecutorQueueLength);
+		this.idleDog = new Watchdog("IDLE",null,clk);
 		idleDog.setDelay(IDLE_DELAY);
-		this.dogs = new LinkedList<Watchdog>();
-		dogs.push(idleDog);
+		this.dogs = queue;
+		dogs.add(idleDog);
 		stopped = false;
 		watchdogThread = new Thread(this, "WatchdogTimer");
 		watchdogThread.setDaemon(true);
@@ -67,123 +160,266 @@ public class WatchdogTimer implements Runnable   {
 	}
 
 	/**
-	 * Add a new timer to the list. It holds an absolute expiration time. 
+	 * Add a new timer to the list. It holds an absolute expiration time.
 	 * The list is never empty, there is at least the IDLE dog.
 	 * @param dog to be added
 	 */
-	public void addWatchdog(final Watchdog dog) {
+	public synchronized void addWatchdog(final Watchdog dog) {
 		if(dog==null)  return;   // Ignore
-		 insert(dog);
+		dogs.remove(dog);        // In case it is already present
+		insert(dog);
+		metrics.recordInsert();
 	}
 	/**
 	 * @return the reciprocal of the time factor. It's the speedup factor.
 	 *         For this base class, the value is 1.0.
 	 */
 	public double getFactor() { return 1.0; }
+	/**
+	 * @return the number of threads in the default pool that runs observers.
+	 */
+	public static int getThreadPoolSize() { return THREAD_POOL_SIZE; }
 	public String getName()   { return this.name; }
+	public WatchdogTimerMetrics getMetrics() { return this.metrics; }
+	public Clock getClock()   { return this.clock; }
+	/**
+	 * Create a watchdog that measures its delays on this timer's clock.
+	 * @param dogName
+	 * @param observer
+	 * @return the new dog, not yet added to the timer
+	 */
+	public Watchdog newWatchdog(String dogName,WatchdogObserver observer) {
+		return new Watchdog(dogName,observer,clock);
+	}
+	/**
+	 * @return the number of dogs in the queue, including the IDLE dog.
+	 */
+	public synchronized int getQueueDepth() { return dogs.size(); }
+	/**
+	 * @return the number of expiration tasks awaiting a thread, -1 if the
+	 *         executor does not report it.
+	 */
+	public int getExecutorQueueLength() {
+		if( threadPool instanceof ThreadPoolExecutor ) {
+			return ((ThreadPoolExecutor)threadPool).getQueue().size();
+		}
+		else if( threadPool instanceof ForkJoinPool ) {
+			ForkJoinPool pool = (ForkJoinPool)threadPool;
+			return (int)Math.min(Integer.MAX_VALUE,pool.getQueuedSubmissionCount()+pool.getQueuedTaskCount());
+		}
+		return -1;
+	}
+	public int getBatchSize() { return this.batchSize; }
+	/**
+	 * @param size the maximum number of expired dogs evaluated by a single
+	 *        task. The default is one. Ignored when grouping by observer.
+	 */
+	public void setBatchSize(int size) { this.batchSize = (size<1?1:size); }
+	public long getCoalescingWindow() { return this.coalescingWindow; }
+	/**
+	 * @param window time that the timer lingers after the first dog is due,
+	 *        collecting others that fall due ~ msecs. The default is zero.
+	 */
+	public synchronized void setCoalescingWindow(long window) {
+		this.coalescingWindow = (window<0?0:window);
+		notifyAll();
+	}
+	public boolean isGroupByObserver() { return this.groupByObserver; }
+	/**
+	 * @param flag if true, the expired dogs of each observer are evaluated
+	 *        in order by a single task.
+	 */
+	public void setGroupByObserver(boolean flag) { this.groupByObserver = flag; }
 	/**
-	 * By default test time is the same as real time.
+	 * By default test time is the same as real time. In general it is
+	 * the wall-clock time of the timer's clock.
 	 * @return
 	 */
 	public long getTestTime() {
-		return System.currentTimeMillis();
+		return clock.wallTime();
 	}
 
 	/**
 	 * Clear the kennel, remove the dogs
 	 * @return
 	 */
-	public void reset() {
+	public synchronized void reset() {
 		dogs.clear();
-		dogs.push(idleDog);
+		dogs.add(idleDog);
+		notifyAll();
 		return;
 	}
 
+	/**
+	 * Start a recurring watchdog. It first expires after the initial delay,
+	 * then recurs until cancelled or removed.
+	 * @param dog the recurring dog
+	 * @param initialDelay ~ msecs
+	 */
+	public synchronized void schedule(final RecurringWatchdog dog,long initialDelay) {
+		if(dog==null)  return;   // Ignore
+		dog.owner = this;
+		dog.reinstate();
+		dogs.remove(dog);
+		dog.setClock(clock);
+		dog.setDelay(initialDelay);
+		insert(dog);
+		metrics.recordInsert();
+	}
+
+	/**
+	 * Re-schedule a fixed-delay dog on completion of its observer.
+	 */
+	protected synchronized void reschedule(RecurringWatchdog dog) {
+		if( stopped || dog.isCancelled() || dogs.contains(dog) ) return;
+		dog.setDelay(dog.getPeriod());
+		insert(dog);
+	}
+
 	/**
 	 * Remove the specified watchdog from the list.
-	 * If this is the first dog in the list, then restart
-	 * the timer. We assume that the IDLE dog will never
-	 * be removed. 
+	 * We assume that the IDLE dog will never be removed.
+	 * A recurring dog is cancelled.
 	 * @param dog to be removed
 	 */
 	public synchronized void removeWatchdog(final Watchdog dog) {
 		if( dog!=null) {
-			log.debugf("%s: Removing dog %s",name,dog.toString());
+			if( log.isDebugEnabled() ) log.debugf("%s: Removing dog %s",name,dog.toString());
+			if( dog instanceof RecurringWatchdog ) ((RecurringWatchdog)dog).cancel();
 			dog.setActive(false);
-			int index = dogs.indexOf(dog);
-			if( index>=0 ) {
-				dogs.remove(index);
-				if( index==0) {   // We popped the top
-					watchdogThread.interrupt();
-				}
+			if( dogs.remove(dog) ) {
+				metrics.recordRemove();
 			}
 			else {
-				log.debugf("%s.removeWatchdog: Unrecognized watchdog (%s)",name,dog.toString());
+				if( log.isDebugEnabled() ) log.debugf("%s.removeWatchdog: Unrecognized watchdog (%s)",name,dog.toString());
 			}
 		}
 	}
-	
+
 	/**
 	 * "pet" a watchdog.
 	 * Change the time of a specified watchdog. If the watchdog
 	 * is not currently in the list, insert it.
-	 * @param dog the dog to update. It has already been set 
-	 *        with the new expiration time. 
+	 * @param dog the dog to update. It has already been set
+	 *        with the new expiration time.
 	 */
 	public synchronized void updateWatchdog(final Watchdog dog) {
 		if( dog==null ) return;
-		log.debugf("%s: Updating (pet) dog %s",name,dog.toString());
-		int index = dogs.indexOf(dog);
-		if( index>=0 ) {
-			dogs.remove(index);
-		}
+		if( log.isDebugEnabled() ) log.debugf("%s: Updating (pet) dog %s",name,dog.toString());
+		dogs.remove(dog);
 		// Add dog back in (or for the first time)
-		// -- this may trigger an interrupt
+		// -- this may wake the timer thread
 		insert(dog);
+		metrics.recordPet();
 	}
-	
+
 	/**
-	 * Insert a new dog into the list in order.
-	 * This list is assumed never to be empty
+	 * Insert a new dog into the queue. If it is due before the timer
+	 * thread is scheduled to wake, then wake it to re-compute its wait.
+	 * The caller must hold the timer's monitor.
 	 */
 	protected void insert(Watchdog dog) {
-		int index=0;
+		dog.setClock(clock);
 		dog.setActive(true);
-		for(Watchdog wd:dogs ) {
-			if(dog.getExpiration()<wd.getExpiration()) {
-				dogs.add(index, dog);
-				if( index==0) watchdogThread.interrupt();   // We've replaced the head
-				return;
+		dogs.add(dog);
+		if( dog.getExpiration()+coalescingWindow<wakeTime ) notifyAll();   // We've replaced the head
+	}
+
+	/**
+	 * Remove all the dogs that are due. If an expired dog is the IDLE dog,
+	 * then simply "pet" it. Otherwise inform its observer of the expiration.
+	 * The observers are run by the thread pool, in batches as configured.
+	 * @param now the current time ~ msecs
+	 * @return false if there was no dog due.
+	 */
+	protected boolean fireWatchdog(long now) {
+		if( dogs.drainExpired(now,expired)==0 ) return false;
+		Map<WatchdogObserver,List<Watchdog>> groups = (groupByObserver?new LinkedHashMap<>():null);
+		int size = batchSize;
+		List<Watchdog> batch = null;
+		try {
+			for(Watchdog dog:expired) {
+				currentTime = dog.getExpiration();
+				if( dog.equals(idleDog) ) {
+					idleDog.setDelay(IDLE_DELAY);
+					insert(idleDog);
+					continue;
+				}
+				if( log.isDebugEnabled() ) log.debugf("%s.fireWatchdog: %s ",name,dog.toString());
+				long lateness = now-dog.getExpiration();   // Before a fixed-rate dog is advanced
+				if( dog instanceof RecurringWatchdog ) {
+					RecurringWatchdog rdog = (RecurringWatchdog)dog;
+					if( rdog.isCancelled() ) continue;
+					boolean ready = rdog.begin();
+					if( rdog.getMode()==RecurrenceMode.FIXED_RATE ) {
+						rdog.advanceExpiration(now);
+						insert(rdog);
+					}
+					if( !ready ) continue;     // Still running the last time
+				}
+				else {
+					dog.setActive(false);
+				}
+				metrics.recordExpiration(lateness);        // Only dogs that are dispatched
+				if( groups!=null ) {
+					groups.computeIfAbsent(dog.getObserver(),key->new ArrayList<>()).add(dog);
+				}
+				else if( size==1 ) {
+					dispatch(new WatchdogExpirationTask(dog,metrics));
+				}
+				else {
+					if( batch==null ) batch = new ArrayList<>(size);
+					batch.add(dog);
+					if( batch.size()>=size ) {
+						dispatch(new WatchdogExpirationTask(batch,metrics));
+						batch = null;
+					}
+				}
 			}
-			index++;
 		}
-		dogs.addLast(dog);
+		finally {
+			expired.clear();
+		}
+		if( batch!=null ) dispatch(new WatchdogExpirationTask(batch,metrics));
+		if( groups!=null ) {
+			for(List<Watchdog> group:groups.values()) {
+				if( group.size()==1 ) dispatch(new WatchdogExpirationTask(group.get(0),metrics));
+				else dispatch(new WatchdogExpirationTask(group,metrics));
+			}
+		}
+		return true;
 	}
 
 	/**
-	 * If top dog is the IDLE dog, then simply "pet" it.
-	 * Otherwise pop the top dog and inform its observer of the expiration. 
-	 * Run the observer in its own thread. 
+	 * Hand an expiration task to the thread pool. A task that is refused, or
+	 * that the pool fails to accept for any other reason, is abandoned so that
+	 * its recurring dogs are not left running. It does not prevent the
+	 * dispatch of the others. A task for
+	 * an executor that runs it in the timer thread is deferred until the timer
+	 * is unlocked, so that its observer may itself use the timer.
 	 */
-	protected void fireWatchdog() {
-		Watchdog dog = dogs.pop();
-		if( dog.equals(idleDog) ) {
-			idleDog.setDelay(IDLE_DELAY);
-			updateWatchdog(idleDog);
+	private void dispatch(WatchdogExpirationTask task) {
+		if( inline ) {
+			deferred.add(task);
+			return;
 		}
-		else {
-			log.debugf("%s.fireWatchdog: %s ",name,dog.toString());
-			dog.setActive(false);
-			threadPool.execute(new WatchdogExpirationTask(dog));
+		try {
+			threadPool.execute(task);
+		}
+		catch(RejectedExecutionException ree) {
+			log.errorf("%s.fireWatchdog: Expiration refused by the thread pool (%s)",name,ree.getMessage());
+			task.abandon();
+		}
+		catch(RuntimeException rte) {
+			log.errorf("%s.fireWatchdog: Exception dispatching expiration (%s)",name,rte.getMessage());
+			task.abandon();
 		}
 	}
 
 	/**
-	 * If top dog is the IDLE dog, then simply "pet" it.
-	 * Otherwise pop the top dog and inform its observer of the expiration. 
-	 * Run the observer in its own thread. 
+	 * @return the dog that is next to expire. It remains in the queue.
 	 */
-	public Watchdog getTopDog() {
+	public synchronized Watchdog getTopDog() {
 		Watchdog dog = dogs.peek();
 		return dog;
 	}
@@ -194,7 +430,7 @@ public class WatchdogTimer implements Runnable   {
 	public synchronized void start() {
 		if( stopped ) {
 			dogs.clear();
-			dogs.push(idleDog);
+			dogs.add(idleDog);
 			stopped = false;
 			watchdogThread = new Thread(this, "WatchdogTimer");
 			watchdogThread.setDaemon(true);
@@ -208,42 +444,61 @@ public class WatchdogTimer implements Runnable   {
 	 */
 	public synchronized void stop() {
 		if( !stopped ) {
-			for(Watchdog wd:dogs ) {
+			for(Watchdog wd:dogs.getWatchdogs() ) {
 				wd.setActive(false);
 			}
 			log.debug(getName()+":STOPPED");
 			stopped = true;
-			if(watchdogThread!=null) {
-				watchdogThread.interrupt();
-			}
+			notifyAll();
 		}
 	}
-	
+
 	/**
-	 * A timeout causes the head to be notified, then pops up the next dog. 
+	 * Wait until the head of the queue is due, then notify its observer.
+	 * An insertion ahead of the head wakes us to re-compute the wait.
+	 * Tasks deferred for the timer thread are run with the timer unlocked.
 	 */
-	public synchronized void run() {
-		while( !stopped  ) {
-			long now = System.nanoTime()/1000000;   // Work in milliseconds
-			Watchdog head = dogs.getFirst();
-			long waitTime = (long)(head.getExpiration()-now);
-			try {
-				if( waitTime>0 ) {
-					log.tracef("%s.run: WAIT for %d ms",getName(),waitTime);
-					wait(waitTime);
+	public void run() {
+		Thread thread = Thread.currentThread();
+		for(;;) {
+			List<WatchdogExpirationTask> tasks = null;
+			synchronized(this) {
+				if( stopped || thread!=watchdogThread ) break;
+				long now = clock.currentTime();   // Work in milliseconds
+				try {
+					wakeTime = dogs.getNextExpiration(now);
+					if( wakeTime<Long.MAX_VALUE-coalescingWindow ) wakeTime += coalescingWindow;
+					long waitTime = wakeTime-now;
+					if( waitTime>0 ) {
+						log.tracef("%s.run: WAIT for %d ms",getName(),waitTime);
+						clock.await(this,waitTime);
+						log.tracef("%s.run: wait complete ---",getName());
+					}
+					else {
+						wakeTime = Long.MIN_VALUE;          // Busy, not waiting
+						fireWatchdog(now);
+					}
+				}
+				catch (InterruptedException e) {
+					log.tracef("%s.run: wait interrupted ---",getName());
+				}
+				catch( Exception ex ) {
+					log.errorf(getName()+".Exception during timeout processing ("+ex.getLocalizedMessage()+")",ex);  // Prints stack trace
+				}
+				if( !deferred.isEmpty() ) {
+					tasks = new ArrayList<>(deferred);
+					deferred.clear();
+				}
+			}
+			if( tasks!=null ) {
+				for(WatchdogExpirationTask task:tasks) {
+					task.run();
 				}
-				log.tracef("%s.run: wait complete ---",getName());
-				currentTime = head.getExpiration();
-				if (!stopped) fireWatchdog();
-			} 
-			// An interruption allows a recognition of re-ordering the queue
-			catch (InterruptedException e) {
-				log.tracef("%s.run: wait interrupted ---",getName());
 			}
-			catch( Exception ex ) {
-				log.errorf(getName()+".Exception during timeout processing ("+ex.getLocalizedMessage()+")",ex);  // Prints stack trace
-			} 
 		}
-		log.infof("%s.run: END watchdog thread %s (%d)",getName(),watchdogThread.getName(),watchdogThread.hashCode());
+		synchronized(this) {
+			wakeTime = Long.MAX_VALUE;
+		}
+		log.infof("%s.run: END watchdog thread %s (%d)",getName(),thread.getName(),thread.hashCode());
 	}
 }
@@ -0,0 +1,132 @@
+/**
+ *   (c) 2025  ILS Automation. All rights reserved.
+ */
+package com.ils.common.watchdog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+
+/**
+ *  Running statistics of a WatchdogTimer. The counters cover the time since
+ *  the timer was created or the metrics were last reset. Rates are averages
+ *  over that interval. Interval rates may be obtained by differencing counts.
+ *
+ *  Lateness is the delay between the expiration of a dog and its removal
+ *  from the queue by the timer thread ~ msecs. Observer times are the
+ *  durations of WatchdogObserver.evaluate(), by observer class ~ usecs.
+ */
+public class WatchdogTimerMetrics   {
+	private static final String NO_OBSERVER = "none";
+	private final IntSupplier queueDepth;
+	private final IntSupplier executorQueueLength;
+	private final LongAdder inserts = new LongAdder();
+	private final LongAdder pets = new LongAdder();
+	private final LongAdder removes = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LatencyHistogram lateness = new LatencyHistogram();
+	private final LatencyHistogram observerTime = new LatencyHistogram();
+	private final Map<String,LatencyHistogram> observerTimes = new ConcurrentHashMap<>();
+	private volatile long startTime;
+
+	/**
+	 * @param depth supplies the number of dogs held by the timer
+	 * @param executorLength supplies the number of tasks awaiting execution, -1 if unknown
+	 */
+	public WatchdogTimerMetrics(IntSupplier depth,IntSupplier executorLength) {
+		this.queueDepth = depth;
+		this.executorQueueLength = executorLength;
+		this.startTime = System.nanoTime();
+	}
+
+	void recordInsert() { inserts.increment(); }
+	void recordPet()    { pets.increment(); }
+	void recordRemove() { removes.increment(); }
+	/**
+	 * @param late time between expiration and firing ~ msecs
+	 */
+	void recordExpiration(long late) {
+		expirations.increment();
+		lateness.record(late);
+	}
+	/**
+	 * @param observer the observer that was evaluated, may be null
+	 * @param nanos duration of the evaluation
+	 */
+	void recordEvaluation(WatchdogObserver observer,long nanos) {
+		long micros = nanos/1000;
+		observerTime.record(micros);
+		String key = (observer==null?NO_OBSERVER:observer.getClass().getName());
+		LatencyHistogram histogram = observerTimes.get(key);
+		if( histogram==null ) histogram = observerTimes.computeIfAbsent(key, k->new LatencyHistogram());
+		histogram.record(micros);
+	}
+
+	public int getQueueDepth()           { return queueDepth.getAsInt(); }
+	public int getExecutorQueueLength()  { return executorQueueLength.getAsInt(); }
+	public long getInsertCount()         { return inserts.sum(); }
+	public long getPetCount()            { return pets.sum(); }
+	public long getRemoveCount()         { return removes.sum(); }
+	public long getExpirationCount()     { return expirations.sum(); }
+	public double getInsertRate()        { return rate(getInsertCount()); }
+	public double getPetRate()           { return rate(getPetCount()); }
+	public double getRemoveRate()        { return rate(getRemoveCount()); }
+	public double getExpirationRate()    { return rate(getExpirationCount()); }
+	/**
+	 * @return seconds since creation or the last reset.
+	 */
+	public double getElapsedSeconds()    { return (System.nanoTime()-startTime)/1.0E9; }
+	public LatencyHistogram getLateness()     { return this.lateness; }
+	public LatencyHistogram getObserverTime() { return this.observerTime; }
+	/**
+	 * @return evaluation times keyed by observer class name.
+	 */
+	public Map<String,LatencyHistogram> getObserverTimes() { return new TreeMap<>(observerTimes); }
+
+	public void reset() {
+		inserts.reset();
+		pets.reset();
+		removes.reset();
+		expirations.reset();
+		lateness.reset();
+		observerTime.reset();
+		observerTimes.clear();
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * @return the metrics as nested maps of simple values. This is
+	 *         the form presented to Python scripts.
+	 */
+	public Map<String,Object> toMap() {
+		Map<String,Object> map = new HashMap<>();
+		map.put("queueDepth", getQueueDepth());
+		map.put("executorQueueLength", getExecutorQueueLength());
+		map.put("elapsedSeconds", getElapsedSeconds());
+		map.put("inserts", getInsertCount());
+		map.put("pets", getPetCount());
+		map.put("removes", getRemoveCount());
+		map.put("expirations", getExpirationCount());
+		map.put("insertRate", getInsertRate());
+		map.put("petRate", getPetRate());
+		map.put("removeRate", getRemoveRate());
+		map.put("expirationRate", getExpirationRate());
+		map.put("lateness", lateness.toMap());
+		map.put("observerTime", observerTime.toMap());
+		Map<String,Object> observers = new TreeMap<>();
+		for(Map.Entry<String,LatencyHistogram> entry:observerTimes.entrySet()) {
+			observers.put(entry.getKey(), entry.getValue().toMap());
+		}
+		map.put("observers", observers);
+		return map;
+	}
+
+	private double rate(long count) {
+		double elapsed = getElapsedSeconds();
+		return (elapsed>0.?count/elapsed:0.);
+	}
+}